@@ -0,0 +1,113 @@
+package ai.com.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ChunkingService} per strategy on the bundled FAQ and on a synthetic 1 MB document with
+ * headings. The {@code chunks} counter is reported per second next to the operation rate, and the gc
+ * profiler configured in the build adds bytes allocated per operation.
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=ChunkingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChunkingBenchmark {
+
+    @Param({"TOKEN", "SENTENCE", "HEADING"})
+    public ChunkingService.Strategy strategy;
+
+    @Param({"faq", "synthetic-1mb"})
+    public String input;
+
+    private ChunkingService chunking;
+    private String text;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Chunks {
+
+        public long chunks;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            chunks = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        chunking = new ChunkingService(strategy, 800, 80, 350, 5, "^(#+ |Q: ).+");
+        text = "faq".equals(input) ? faq() : synthetic(1 << 20);
+    }
+
+    @Benchmark
+    public List<String> chunk(Chunks counter) {
+        List<String> chunks = chunking.chunk(text);
+        counter.chunks += chunks.size();
+        return chunks;
+    }
+
+    /**
+     * The same shared instance under contention, as in the ingestion split stage
+     */
+    @Benchmark
+    @Threads(4)
+    public List<String> chunkShared(Chunks counter) {
+        List<String> chunks = chunking.chunk(text);
+        counter.chunks += chunks.size();
+        return chunks;
+    }
+
+    private static String faq() throws IOException {
+        try (InputStream in = ChunkingBenchmark.class.getResourceAsStream("/docs/olympic-faq.txt")) {
+            if (in == null) {
+                throw new IOException("docs/olympic-faq.txt is not on the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Markdown-like text of about the given size: sections of paragraphs of sentences, fixed seed
+     */
+    static String synthetic(int chars) {
+        String[] words = {"the", "venue", "ticket", "athlete", "schedule", "opening", "ceremony", "medal", "transport",
+                "volunteer", "accessibility", "stadium", "qualification", "broadcast", "spectators", "security"};
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(chars + 256);
+        int section = 0;
+        while (text.length() < chars) {
+            text.append("## Section ").append(++section).append('\n');
+            for (int paragraph = 0, paragraphs = 2 + random.nextInt(4); paragraph < paragraphs; paragraph++) {
+                for (int sentence = 0, sentences = 3 + random.nextInt(6); sentence < sentences; sentence++) {
+                    for (int word = 0, length = 6 + random.nextInt(14); word < length; word++) {
+                        String next = words[random.nextInt(words.length)];
+                        text.append(word == 0 ? Character.toUpperCase(next.charAt(0)) + next.substring(1) : next)
+                                .append(word == length - 1 ? ". " : " ");
+                    }
+                }
+                text.append("\n\n");
+            }
+        }
+        return text.toString();
+    }
+}
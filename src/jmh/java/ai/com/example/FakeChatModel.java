@@ -0,0 +1,34 @@
+package ai.com.example;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for the Ollama chat model: waits the configured latency, standing in for generation, and answers
+ * with a fixed text that depends only on the prompt length. The wait parks the thread like a blocking HTTP
+ * call would, so it occupies a {@link ChatGateway} permit for as long as a real call.
+ */
+final class FakeChatModel implements ChatModel {
+
+    private final long latencyNanos;
+
+    FakeChatModel(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        String answer = "Answered from a prompt of " + prompt.getContents().length() + " characters.";
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+    }
+}
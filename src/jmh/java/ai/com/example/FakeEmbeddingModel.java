@@ -0,0 +1,77 @@
+package ai.com.example;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the Ollama embedding model. Texts are embedded as hashed bags of words, so the same text always
+ * gets the same unit vector and texts sharing words score as similar, which is enough to exercise retrieval
+ * without a model. Every call waits the configured latency, once per request rather than per text.
+ */
+final class FakeEmbeddingModel implements EmbeddingModel {
+
+    static final int DIMENSIONS = 384;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final long latencyNanos;
+
+    FakeEmbeddingModel(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        pause();
+        List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+        for (String text : request.getInstructions()) {
+            embeddings.add(new Embedding(vector(text), embeddings.size()));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        pause();
+        return vector(text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        pause();
+        return vector(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+
+    static float[] vector(String text) {
+        float[] vector = new float[DIMENSIONS];
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int hash = word.hashCode();
+            vector[Math.floorMod(hash, DIMENSIONS)] += (hash & 1) == 0 ? 1 : -1;
+        }
+        return HnswVectorStore.normalize(vector);
+    }
+
+    private void pause() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link FaqController#faq} end to end: embedding, semantic cache, retrieval, prompt rendering and
+ * the chat call through {@link ChatGateway}, with the stand-in chat model taking {@code chatLatencyMillis} to
+ * answer. With the semantic cache on, the rotating questions are answered from it after their first round.
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=FaqAnswerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FaqAnswerBenchmark {
+
+    @Param({"0", "20"})
+    public int chatLatencyMillis;
+
+    @Param({"false", "true"})
+    public boolean semanticCache;
+
+    private FaqCorpus corpus;
+    private FaqController faqController;
+
+    @State(Scope.Thread)
+    public static class Questions {
+
+        private int next;
+
+        String next() {
+            return FaqCorpus.QUESTIONS.get(next++ % FaqCorpus.QUESTIONS.size());
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        corpus = new FaqCorpus(new FakeEmbeddingModel(Duration.ZERO), meterRegistry, true);
+        // The gateway defaults: two calls in flight, the rest queue
+        ChatGateway chatGateway = new ChatGateway(new FakeChatModel(Duration.ofMillis(chatLatencyMillis)), new StandardEnvironment(),
+                meterRegistry, 2, 50, Duration.ofSeconds(30));
+        faqController = new FaqController(chatGateway, corpus.ragRetriever,
+                new SemanticCache(meterRegistry, semanticCache, 0.95, Duration.ofHours(1), 1000), meterRegistry,
+                new ClassPathResource("prompts/rag-prompt-template.st"), "", "source == 'uploaded'");
+    }
+
+    @TearDown
+    public void tearDown() {
+        corpus.close();
+    }
+
+    @Benchmark
+    public String faq(Questions questions) {
+        return faqController.faq(questions.next());
+    }
+
+    /**
+     * Eight concurrent requests for the gateway's two slots, the queueing a burst of users sees
+     */
+    @Benchmark
+    @Threads(8)
+    public String faqConcurrent(Questions questions) {
+        return faqController.faq(questions.next());
+    }
+}
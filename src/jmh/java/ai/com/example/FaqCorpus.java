@@ -0,0 +1,85 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * The bundled FAQ indexed the way ingestion does it, one chunk per question, into an {@link InMemoryVectorStore}
+ * and a {@link LexicalIndex} in a temporary directory, with a {@link RagRetriever} over both. Reranking is off,
+ * so the retriever does only what it does against Ollama and Chroma minus the network.
+ */
+final class FaqCorpus implements AutoCloseable {
+
+    static final String FILENAME = "olympic-faq.txt";
+
+    /**
+     * Questions phrased unlike the FAQ, so the lexical and vector searches both have to work for their match
+     */
+    static final List<String> QUESTIONS = List.of(
+            "How many athletes compete in the Olympic Games Paris 2024",
+            "Where can I buy a ticket for the games?",
+            "What is the mascot called and what does it look like?",
+            "When do the Paris Olympics start and end?",
+            "Which new sports were added this time?",
+            "Is breaking an Olympic sport in Paris?",
+            "What hospitality packages are on offer?",
+            "Which colours does the Phryge wear?");
+
+    final InMemoryVectorStore vectorStore;
+    final RagRetriever ragRetriever;
+
+    private final Path indexDir;
+    private final RerankStage rerankStage;
+
+    FaqCorpus(FakeEmbeddingModel embeddingModel, MeterRegistry meterRegistry, boolean hybrid) throws IOException {
+        List<Document> chunks = ChunkIds.assign(FILENAME, new ChunkingService(ChunkingService.Strategy.HEADING, 200, 0, 50, 5, "^(#+ |Q: ).+")
+                .chunk(faq())
+                .stream()
+                .map(text -> Document.builder().text(text).metadata(Map.of("source", "faq", "filename", FILENAME)).build())
+                .toList());
+
+        this.indexDir = Files.createTempDirectory("jmh-lexical-index");
+        LexicalIndex lexicalIndex = new LexicalIndex(new ObjectMapper(), indexDir.toString(), 1.2, 0.75);
+        lexicalIndex.index(FILENAME, chunks);
+        this.vectorStore = new InMemoryVectorStore(embeddingModel);
+        vectorStore.add(chunks);
+
+        this.rerankStage = new RerankStage(Optional.empty(), meterRegistry, 20, Duration.ofMillis(1500), 8);
+        this.ragRetriever = new RagRetriever(vectorStore, embeddingModel, lexicalIndex, rerankStage, meterRegistry,
+                2, 0.0, hybrid, 10, 60, Duration.ofSeconds(2));
+    }
+
+    static String faq() throws IOException {
+        try (InputStream in = FaqCorpus.class.getResourceAsStream("/docs/" + FILENAME)) {
+            if (in == null) {
+                throw new IOException("docs/" + FILENAME + " is not on the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void close() {
+        ragRetriever.shutdown();
+        rerankStage.shutdown();
+        try (Stream<Path> files = Files.walk(indexDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
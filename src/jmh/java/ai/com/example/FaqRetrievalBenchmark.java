@@ -0,0 +1,77 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the retrieval behind {@code /faq}, against the FAQ in the local stand-ins instead of Ollama and
+ * Chroma: the whole {@link RagRetriever} path, vector-only or hybrid, and the vector store search on its own.
+ * The stand-in embedding model answers instantly unless {@code embeddingLatencyMillis} says otherwise.
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=FaqRetrievalBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FaqRetrievalBenchmark {
+
+    @Param({"true", "false"})
+    public boolean hybrid;
+
+    @Param({"0"})
+    public int embeddingLatencyMillis;
+
+    private FaqCorpus corpus;
+
+    @State(Scope.Thread)
+    public static class Questions {
+
+        private int next;
+
+        String next() {
+            return FaqCorpus.QUESTIONS.get(next++ % FaqCorpus.QUESTIONS.size());
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = new FaqCorpus(new FakeEmbeddingModel(Duration.ofMillis(embeddingLatencyMillis)), new SimpleMeterRegistry(), hybrid);
+    }
+
+    @TearDown
+    public void tearDown() {
+        corpus.close();
+    }
+
+    @Benchmark
+    public List<Document> retrieve(Questions questions) {
+        return corpus.ragRetriever.retrieve(questions.next(), "");
+    }
+
+    /**
+     * The vector store alone, for the share of {@link #retrieve} spent outside it; {@code hybrid} has no effect here
+     */
+    @Benchmark
+    public List<Document> vectorSearch(Questions questions) {
+        return corpus.vectorStore.similaritySearch(SearchRequest.builder()
+                .query(questions.next())
+                .topK(10)
+                .build());
+    }
+}
@@ -0,0 +1,103 @@
+package ai.com.example;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Stand-in for Chroma: keeps documents and their normalized embeddings in memory and answers searches by
+ * scanning all of them. Filters, top K and the similarity threshold behave like the real store, and results
+ * carry a score and a {@code distance} metadata entry like Chroma's.
+ */
+final class InMemoryVectorStore implements VectorStore, VectorSearch {
+
+    private final EmbeddingModel embeddingModel;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    InMemoryVectorStore(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        for (Document document : documents) {
+            float[] vector = HnswVectorStore.normalize(embeddingModel.embed(document));
+            entries.put(document.getId(), new Entry(document.getId(), document.getText(), Map.copyOf(document.getMetadata()), vector));
+        }
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        ids.forEach(entries::remove);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = MetadataFilters.of(filterExpression);
+        entries.values().removeIf(entry -> filter.test(entry.metadata()));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return similaritySearch(request, embeddingModel.embed(request.getQuery()));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding) {
+        float[] query = HnswVectorStore.normalize(queryEmbedding);
+        Predicate<Map<String, Object>> filter = request.getFilterExpression() != null
+                ? MetadataFilters.of(request.getFilterExpression())
+                : metadata -> true;
+
+        List<Scored> matches = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!filter.test(entry.metadata())) {
+                continue;
+            }
+            double similarity = dot(query, entry.vector());
+            if (similarity >= request.getSimilarityThreshold()) {
+                matches.add(new Scored(entry, similarity));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(Scored::similarity).reversed());
+
+        List<Document> results = new ArrayList<>(Math.min(request.getTopK(), matches.size()));
+        for (Scored match : matches.subList(0, Math.min(request.getTopK(), matches.size()))) {
+            Map<String, Object> metadata = new LinkedHashMap<>(match.entry().metadata());
+            metadata.put("distance", 1 - match.similarity());
+            results.add(Document.builder()
+                    .id(match.entry().id())
+                    .text(match.entry().text())
+                    .metadata(metadata)
+                    .score(match.similarity())
+                    .build());
+        }
+        return results;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(String id, String text, Map<String, Object> metadata, float[] vector) {}
+
+    private record Scored(Entry entry, double similarity) {}
+}
@@ -0,0 +1,55 @@
+package ai.com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ai.converter.ListOutputConverter;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of parsing a model's comma-separated answer of {@code items} items into a list. {@code perRequest}
+ * creates the converter and its conversion service on every call as {@link AIController} does, {@code shared}
+ * reuses one converter.
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=ListOutputConverterBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListOutputConverterBenchmark {
+
+    @Param({"10", "100"})
+    public int items;
+
+    private ListOutputConverter sharedConverter;
+    private String answer;
+
+    @Setup
+    public void setUp() {
+        sharedConverter = new ListOutputConverter(new DefaultConversionService());
+        answer = IntStream.range(0, items)
+                .mapToObj(i -> "Olympic venue number " + i)
+                .collect(Collectors.joining(", "));
+    }
+
+    @Benchmark
+    public List<String> perRequest() {
+        return new ListOutputConverter(new DefaultConversionService()).convert(answer);
+    }
+
+    @Benchmark
+    public List<String> shared() {
+        return sharedConverter.convert(answer);
+    }
+}
@@ -0,0 +1,70 @@
+package ai.com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering the RAG prompt with {@code documents} FAQ chunks, with no model involved. {@code perRequest}
+ * builds the template from its resource on every call as {@link FaqController} does, {@code shared} reuses one
+ * template, so the difference is what reading and parsing the template costs per request.
+ * <pre>
+ * ./gradlew jmh -PjmhInclude=PromptTemplateBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptTemplateBenchmark {
+
+    @Param({"2", "8"})
+    public int documents;
+
+    private Resource resource;
+    private PromptTemplate sharedTemplate;
+    private Map<String, Object> parameters;
+
+    @Setup
+    public void setUp() throws IOException {
+        resource = new ClassPathResource("prompts/rag-prompt-template.st");
+        sharedTemplate = new PromptTemplate(resource);
+        List<String> chunks = new ChunkingService(ChunkingService.Strategy.HEADING, 200, 0, 50, 5, "^(#+ |Q: ).+")
+                .chunk(FaqCorpus.faq());
+        parameters = new HashMap<>();
+        parameters.put("input", FaqCorpus.QUESTIONS.get(0));
+        parameters.put("documents", String.join("\n", chunks.subList(0, Math.min(documents, chunks.size()))));
+    }
+
+    @Benchmark
+    public Prompt perRequest() {
+        return new PromptTemplate(resource).create(parameters);
+    }
+
+    @Benchmark
+    public Prompt shared() {
+        return sharedTemplate.create(parameters);
+    }
+
+    /**
+     * Rendering to text only, without building the prompt's message
+     */
+    @Benchmark
+    public String sharedRender() {
+        return sharedTemplate.render(parameters);
+    }
+}
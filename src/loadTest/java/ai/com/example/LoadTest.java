@@ -0,0 +1,115 @@
+package ai.com.example;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop HTTP load generator: {@code concurrency} clients send GET requests back to back until
+ * {@code requests} have been sent, then throughput, latency percentiles and status codes are printed.
+ * <p>
+ * Unless the URL already has a {@code message}, requests rotate through {@link #QUESTIONS}, so they do not all
+ * ask the same thing. Start the server with the semantic cache off for the comparison, otherwise
+ * {@code /faq} answers every question from the cache after its first request and the chat model is never
+ * under load.
+ * <p>
+ * Run it against the same endpoint with {@code spring.threads.virtual.enabled} false and true to compare
+ * how many concurrent requests the server accepts before clients start waiting for a thread. Raise
+ * {@code chat.gateway.queue-capacity} for the comparison, otherwise the gateway answers the overflow with 429.
+ * <pre>
+ * ./gradlew bootRun --args='--faq.semantic-cache.enabled=false --chat.gateway.queue-capacity=1000'
+ * ./gradlew loadTest -Purl=http://localhost:8080/faq -Pconcurrency=400 -Prequests=2000
+ * </pre>
+ */
+public final class LoadTest {
+
+    static final List<String> QUESTIONS = List.of(
+            "How many athletes compete in the Olympic Games Paris 2024",
+            "When do the Paris 2024 Olympic Games start",
+            "Where does the opening ceremony take place",
+            "Which new sports are on the Paris 2024 programme",
+            "Where are the surfing events held",
+            "How can I buy tickets for the Olympic Games",
+            "How many medal events are there at Paris 2024",
+            "When do the Paralympic Games take place");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(args.length > 0 ? args[0] : "http://localhost:8080/faq");
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<HttpRequest> requestsToSend = uri.getRawQuery() != null && uri.getRawQuery().contains("message=")
+                ? List.of(request(uri))
+                : QUESTIONS.stream()
+                        .map(question -> request(URI.create(uri + (uri.getRawQuery() == null ? "?" : "&")
+                                + "message=" + URLEncoder.encode(question, StandardCharsets.UTF_8))))
+                        .toList();
+
+        AtomicInteger remaining = new AtomicInteger(requests);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(requests));
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+        System.out.printf("Sending %d requests to %s from %d concurrent clients%n", requests, uri, concurrency);
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                clients.execute(() -> {
+                    int next;
+                    while ((next = remaining.getAndDecrement()) > 0) {
+                        HttpRequest request = requestsToSend.get(next % requestsToSend.size());
+                        long sent = System.nanoTime();
+                        String outcome;
+                        try {
+                            outcome = String.valueOf(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+                        } catch (Exception e) {
+                            outcome = e.getClass().getSimpleName();
+                        }
+                        latencies.add(System.nanoTime() - sent);
+                        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("Completed %d requests in %.1f s, %.1f requests/s%n", sorted.size(), seconds, sorted.size() / seconds);
+        System.out.printf("Latency ms: p50 %d, p95 %d, p99 %d, max %d%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        new TreeMap<>(outcomes).forEach((outcome, count) -> System.out.printf("  %s: %d%n", outcome, count.sum()));
+    }
+
+    private static HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5)).GET().build();
+    }
+
+    private static long percentile(List<Long> sortedNanos, double quantile) {
+        if (sortedNanos.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedNanos.size()) - 1;
+        return Duration.ofNanos(sortedNanos.get(Math.max(0, index))).toMillis();
+    }
+}
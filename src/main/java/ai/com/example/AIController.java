@@ -1,44 +1,66 @@
 package ai.com.example;
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.converter.ListOutputConverter;
-import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/ai")
 public class AIController {
 
-    private OllamaChatModel ollamaChatModel;
+    static final String CONVERSATION_ID_HEADER = "X-Conversation-Id";
+
+    private final ChatModel chatModel;
 
     private final ChatClient chatClient;
-    public AIController(OllamaChatModel ollamaChatModel, ChatClient.Builder builder) {
-        this.ollamaChatModel = ollamaChatModel;
-        this.chatClient = builder
-                .defaultAdvisors(new MessageChatMemoryAdvisor(new InMemoryChatMemory()))
+    public AIController(ChatGateway chatGateway, BoundedChatMemory chatMemory) {
+        this.chatModel = chatGateway.model("ai", ChatGateway.Priority.INTERACTIVE);
+        // The memory enforces its own token budget, the advisor's message window only has to be large enough
+        this.chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(new MessageChatMemoryAdvisor(chatMemory,
+                        AbstractChatMemoryAdvisor.DEFAULT_CHAT_MEMORY_CONVERSATION_ID, Integer.MAX_VALUE))
                 .build();
     }
     @GetMapping("/prompt")
     public Flux<String> promptResponse(@RequestParam("prompt") String prompt){
-        return ollamaChatModel.stream(prompt);
+        return chatModel.stream(prompt);
     }
 
+    /**
+     * Each conversation id, sent as the X-Conversation-Id header or the conversationId parameter, has its own history.
+     * A request without one starts a new conversation; its id comes back in the X-Conversation-Id response header
+     * and continues the conversation when sent with the next message.
+     */
     @GetMapping("/message")
-    public List<String> messageResponse(@RequestParam("message") String message){
+    public ResponseEntity<List<String>> messageResponse(@RequestParam("message") String message,
+                                        @RequestHeader(value = CONVERSATION_ID_HEADER, required = false) String conversationHeader,
+                                        @RequestParam(value = "conversationId", required = false) String conversationParam){
+        // Never fall back to a shared default id, that would mix the histories of unrelated clients
+        String conversationId = conversationHeader != null && !conversationHeader.isBlank() ? conversationHeader
+                : conversationParam != null && !conversationParam.isBlank() ? conversationParam
+                : UUID.randomUUID().toString();
         ListOutputConverter outputConverter =new ListOutputConverter(new DefaultConversionService());
-       return outputConverter.convert(chatClient.prompt()
+        List<String> answer = outputConverter.convert(chatClient.prompt()
                 .user(message)
+                .advisors(advisor -> advisor.param(AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY, conversationId))
                 .call()
                 .content());
+        return ResponseEntity.ok()
+                .header(CONVERSATION_ID_HEADER, conversationId)
+                .body(answer);
     }
 
 }
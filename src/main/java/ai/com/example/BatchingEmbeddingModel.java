@@ -0,0 +1,249 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces embedding requests from all callers into batches bounded by text count and token count,
+ * and sends up to {@code concurrency} batches to the delegate model at the same time.
+ * <p>
+ * Chunks from different files processed in parallel end up in the same batch, so the number of
+ * round trips depends on the configured batch size rather than on how the documents were split.
+ */
+@Slf4j
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final int maxBatchTokens;
+    private final long lingerNanos;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final BlockingQueue<PendingEmbedding> pending = new LinkedBlockingQueue<>();
+    private final Semaphore inFlightBatches;
+    private final ExecutorService batchExecutor;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    private final Timer batchLatency;
+    private final DistributionSummary batchSize;
+    private final DistributionSummary batchTokens;
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize, int maxBatchTokens, int concurrency,
+                                  Duration linger, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchTokens = maxBatchTokens;
+        this.lingerNanos = linger.toNanos();
+        this.inFlightBatches = new Semaphore(concurrency);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchLatency = Timer.builder("embedding.batch.latency")
+                .description("Time taken by the embedding model to process one batch")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("embedding.batch.size")
+                .description("Number of texts sent in one embedding batch")
+                .register(meterRegistry);
+        this.batchTokens = DistributionSummary.builder("embedding.batch.tokens")
+                .description("Estimated number of tokens sent in one embedding batch")
+                .register(meterRegistry);
+        Gauge.builder("embedding.batch.pending", pending, BlockingQueue::size)
+                .description("Texts waiting to be assigned to an embedding batch")
+                .register(meterRegistry);
+
+        this.dispatcher = new Thread(this::dispatchLoop, "embedding-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<float[]> vectors = await(enqueue(request.getInstructions(), request.getOptions()));
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    /**
+     * Query-time embeddings go straight to the model, they should never wait for a batch to fill up
+     */
+    @Override
+    public float[] embed(String text) {
+        return delegate.embed(text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    /**
+     * The vector store's own batching strategy is ignored, batches are formed here across all callers
+     */
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        List<String> texts = documents.stream().map(Document::getText).toList();
+        return await(enqueue(texts, options));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private List<CompletableFuture<float[]>> enqueue(List<String> texts, EmbeddingOptions options) {
+        if (closed) {
+            throw new IllegalStateException("Embedding batcher has been closed");
+        }
+        List<CompletableFuture<float[]>> results = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            CompletableFuture<float[]> result = new CompletableFuture<>();
+            pending.add(new PendingEmbedding(text, tokenCountEstimator.estimate(text), options, result));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static List<float[]> await(List<CompletableFuture<float[]>> results) {
+        List<float[]> vectors = new ArrayList<>(results.size());
+        try {
+            for (CompletableFuture<float[]> result : results) {
+                vectors.add(result.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+        return vectors;
+    }
+
+    private void dispatchLoop() {
+        PendingEmbedding carried = null;
+        while (!closed) {
+            try {
+                PendingEmbedding first = carried != null ? carried : pending.take();
+                carried = null;
+
+                List<PendingEmbedding> batch = new ArrayList<>();
+                batch.add(first);
+                int tokens = first.tokens();
+
+                // Wait up to the linger time for more texts, but never past the count or token limits
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingEmbedding next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (tokens + next.tokens() > maxBatchTokens || !Objects.equals(next.options(), first.options())) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    tokens += next.tokens();
+                }
+
+                // While every worker is busy more texts pile up, so the next batch leaves full
+                inFlightBatches.acquire();
+                int batchTokenCount = tokens;
+                try {
+                    batchExecutor.execute(() -> {
+                        try {
+                            embedBatch(batch, batchTokenCount);
+                        } finally {
+                            inFlightBatches.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Shut down under us: fail this batch instead of leaving its callers waiting forever
+                    inFlightBatches.release();
+                    log.warn("Embedding batch of {} texts rejected: {}", batch.size(), e.getMessage());
+                    batch.forEach(item -> item.result().completeExceptionally(e));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (carried != null) {
+            carried.result().completeExceptionally(new IllegalStateException("Embedding batcher has been closed"));
+        }
+    }
+
+    private void embedBatch(List<PendingEmbedding> batch, int tokens) {
+        long start = System.nanoTime();
+        try {
+            List<String> texts = batch.stream().map(PendingEmbedding::text).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, batch.get(0).options()));
+            List<Embedding> results = response.getResults();
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " embeddings but got " + results.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i).getOutput());
+            }
+        } catch (Exception e) {
+            log.error("Embedding batch of {} texts failed: {}", batch.size(), e.getMessage());
+            batch.forEach(item -> item.result().completeExceptionally(e));
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            batchLatency.record(elapsed, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+            batchTokens.record(tokens);
+            log.debug("Embedded batch of {} texts (~{} tokens) in {} ms",
+                    batch.size(), tokens, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        batchExecutor.shutdown();
+        PendingEmbedding item;
+        while ((item = pending.poll()) != null) {
+            item.result().completeExceptionally(new IllegalStateException("Embedding batcher has been closed"));
+        }
+    }
+
+    private record PendingEmbedding(String text, int tokens, EmbeddingOptions options, CompletableFuture<float[]> result) {}
+}
@@ -0,0 +1,358 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Chat memory kept per conversation id with a bounded footprint.
+ * <p>
+ * Each conversation keeps only as many recent messages as fit in a token budget. Messages pushed out
+ * of the window are folded into a running summary by the chat model in the background, and the summary
+ * is returned as a system message in front of the window. Conversations live in an LRU map capped in
+ * size and idle time, and are optionally written to disk so they survive eviction and restarts.
+ * <p>
+ * Monitors are only held around in-memory work. Conversations are read from disk before the map's monitor is
+ * taken, and written after the conversation's monitor is released, under a per-conversation lock that orders
+ * the writes so the newest state always ends up on disk.
+ */
+@Slf4j
+@Component
+public class BoundedChatMemory implements ChatMemory {
+
+    private static final String SUMMARY_PROMPT = """
+            Summarize the following conversation between a user and an assistant in at most 150 words.
+            Keep names, numbers and decisions, and build on the previous summary if there is one.
+
+            PREVIOUS SUMMARY:
+            %s
+
+            CONVERSATION:
+            %s
+            """;
+
+    private final ChatModel chatModel;
+    private final ObjectMapper objectMapper;
+    private final int maxConversations;
+    private final long idleTimeoutMillis;
+    private final int tokenBudget;
+    private final boolean summarize;
+    private final Path persistenceDir;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final LinkedHashMap<String, Conversation> conversations;
+    private final ExecutorService summarizer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-summarizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BoundedChatMemory(ChatGateway chatGateway,
+                             ObjectMapper objectMapper,
+                             @Value("${chat.memory.max-conversations:1000}") int maxConversations,
+                             @Value("${chat.memory.idle-timeout:2h}") Duration idleTimeout,
+                             @Value("${chat.memory.token-budget:2000}") int tokenBudget,
+                             @Value("${chat.memory.summarize:true}") boolean summarize,
+                             @Value("${chat.memory.persistence-dir:}") String persistenceDir) throws IOException {
+        this.chatModel = chatGateway.model("chat-memory", ChatGateway.Priority.BATCH);
+        this.objectMapper = objectMapper;
+        this.maxConversations = maxConversations;
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.tokenBudget = tokenBudget;
+        this.summarize = summarize;
+        this.persistenceDir = persistenceDir.isBlank() ? null : Paths.get(persistenceDir);
+        if (this.persistenceDir != null) {
+            Files.createDirectories(this.persistenceDir);
+        }
+        this.conversations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Conversation> eldest) {
+                return size() > BoundedChatMemory.this.maxConversations;
+            }
+        };
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Conversation conversation = conversation(conversationId);
+        PendingWrite pendingWrite;
+        synchronized (conversation) {
+            for (Message message : messages) {
+                String text = message.getText() != null ? message.getText() : "";
+                conversation.append(new Turn(message.getMessageType(), text, tokenCountEstimator.estimate(text)));
+            }
+
+            // Always keep the newest message, even if it alone exceeds the budget
+            while (conversation.tokens > tokenBudget && conversation.turns.size() > 1) {
+                Turn dropped = conversation.removeOldest();
+                if (summarize) {
+                    conversation.unsummarized.add(dropped);
+                }
+            }
+            if (!conversation.unsummarized.isEmpty() && !conversation.summarizing) {
+                conversation.summarizing = true;
+                summarizer.execute(() -> summarize(conversation));
+            }
+            pendingWrite = pendingWrite(conversation);
+        }
+        persist(conversation, pendingWrite);
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        Conversation conversation = conversation(conversationId);
+        synchronized (conversation) {
+            List<Message> messages = new ArrayList<>();
+            if (conversation.summary != null) {
+                messages.add(new SystemMessage("Summary of the earlier conversation: " + conversation.summary));
+            }
+            int skip = Math.max(0, conversation.turns.size() - lastN);
+            Iterator<Turn> iterator = conversation.turns.iterator();
+            for (int i = 0; iterator.hasNext(); i++) {
+                Turn turn = iterator.next();
+                if (i >= skip) {
+                    messages.add(turn.toMessage());
+                }
+            }
+            return messages;
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Conversation removed;
+        synchronized (this) {
+            removed = conversations.remove(conversationId);
+        }
+        if (persistenceDir != null) {
+            if (removed != null) {
+                removed.fileLock.lock();
+            }
+            try {
+                Files.deleteIfExists(file(conversationId));
+                if (removed != null) {
+                    // A write still in flight for the cleared conversation must not bring the file back
+                    removed.writtenVersion = Long.MAX_VALUE;
+                }
+            } catch (IOException e) {
+                log.warn("Could not delete stored conversation {}: {}", conversationId, e.getMessage());
+            } finally {
+                if (removed != null) {
+                    removed.fileLock.unlock();
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return conversations.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        summarizer.shutdownNow();
+    }
+
+    /**
+     * Find the conversation in memory or on disk, dropping conversations that have been idle too long
+     */
+    private Conversation conversation(String conversationId) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Conversation> eldest = conversations.values().iterator();
+            while (eldest.hasNext()) {
+                Conversation candidate = eldest.next();
+                if (now - candidate.lastAccess <= idleTimeoutMillis) {
+                    break;
+                }
+                eldest.remove();
+            }
+
+            Conversation conversation = conversations.get(conversationId);
+            if (conversation != null) {
+                conversation.lastAccess = now;
+                return conversation;
+            }
+        }
+
+        // Read outside the monitor; if another request loaded the same conversation meanwhile, its copy wins
+        Conversation loaded = load(conversationId);
+        synchronized (this) {
+            Conversation conversation = conversations.putIfAbsent(conversationId, loaded);
+            if (conversation == null) {
+                conversation = loaded;
+            }
+            conversation.lastAccess = now;
+            return conversation;
+        }
+    }
+
+    private void summarize(Conversation conversation) {
+        String previousSummary;
+        List<Turn> turns;
+        synchronized (conversation) {
+            previousSummary = conversation.summary;
+            turns = new ArrayList<>(conversation.unsummarized);
+        }
+
+        String summary = null;
+        try {
+            String transcript = turns.stream()
+                    .map(turn -> turn.type() + ": " + turn.text())
+                    .collect(Collectors.joining("\n"));
+            summary = chatModel.call(SUMMARY_PROMPT.formatted(previousSummary != null ? previousSummary : "(none)", transcript));
+        } catch (Exception e) {
+            // The dropped turns are lost, the window itself is unaffected
+            log.warn("Could not summarize conversation {}: {}", conversation.id, e.getMessage());
+        }
+
+        PendingWrite pendingWrite;
+        synchronized (conversation) {
+            if (summary != null && !summary.isBlank()) {
+                conversation.summary = summary.strip();
+            }
+            conversation.unsummarized.subList(0, turns.size()).clear();
+            if (conversation.unsummarized.isEmpty()) {
+                conversation.summarizing = false;
+            } else {
+                summarizer.execute(() -> summarize(conversation));
+            }
+            pendingWrite = pendingWrite(conversation);
+        }
+        persist(conversation, pendingWrite);
+    }
+
+    private Conversation load(String conversationId) {
+        Conversation conversation = new Conversation(conversationId);
+        if (persistenceDir == null || !Files.exists(file(conversationId))) {
+            return conversation;
+        }
+        try {
+            StoredConversation stored = objectMapper.readValue(file(conversationId).toFile(), StoredConversation.class);
+            conversation.summary = stored.summary();
+            for (StoredMessage message : stored.messages()) {
+                conversation.append(new Turn(message.type(), message.text(), tokenCountEstimator.estimate(message.text())));
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable stored conversation {}: {}", conversationId, e.getMessage());
+        }
+        return conversation;
+    }
+
+    /**
+     * Copy of the conversation to write to disk, taken while holding its monitor
+     */
+    private PendingWrite pendingWrite(Conversation conversation) {
+        if (persistenceDir == null) {
+            return null;
+        }
+        // Turns waiting to be summarized are stored too, so a restart does not lose them
+        List<StoredMessage> messages = new ArrayList<>();
+        conversation.unsummarized.forEach(turn -> messages.add(new StoredMessage(turn.type(), turn.text())));
+        conversation.turns.forEach(turn -> messages.add(new StoredMessage(turn.type(), turn.text())));
+        return new PendingWrite(++conversation.version, new StoredConversation(conversation.id, conversation.summary, messages));
+    }
+
+    private void persist(Conversation conversation, PendingWrite pendingWrite) {
+        if (pendingWrite == null) {
+            return;
+        }
+        Path target = file(conversation.id);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        conversation.fileLock.lock();
+        try {
+            // A newer copy may have been written while this one waited for the lock
+            if (pendingWrite.version() <= conversation.writtenVersion) {
+                return;
+            }
+            objectMapper.writeValue(tmp.toFile(), pendingWrite.conversation());
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            conversation.writtenVersion = pendingWrite.version();
+        } catch (IOException e) {
+            log.warn("Could not store conversation {}: {}", conversation.id, e.getMessage());
+        } finally {
+            conversation.fileLock.unlock();
+        }
+    }
+
+    private Path file(String conversationId) {
+        // Conversation ids come from clients, so they are hashed rather than used as file names
+        return persistenceDir.resolve(ChunkIds.sha256Hex(conversationId) + ".json");
+    }
+
+    private static final class Conversation {
+
+        private final String id;
+        private final Deque<Turn> turns = new ArrayDeque<>();
+        private final List<Turn> unsummarized = new ArrayList<>();
+        // Held while writing the file, never together with the conversation's monitor
+        private final ReentrantLock fileLock = new ReentrantLock();
+        private String summary;
+        private int tokens;
+        private boolean summarizing;
+        private long version;
+        private long writtenVersion;
+        private volatile long lastAccess;
+
+        private Conversation(String id) {
+            this.id = id;
+        }
+
+        private void append(Turn turn) {
+            turns.addLast(turn);
+            tokens += turn.tokens();
+        }
+
+        private Turn removeOldest() {
+            Turn turn = turns.removeFirst();
+            tokens -= turn.tokens();
+            return turn;
+        }
+    }
+
+    private record Turn(MessageType type, String text, int tokens) {
+
+        Message toMessage() {
+            return switch (type) {
+                case USER -> new UserMessage(text);
+                case SYSTEM -> new SystemMessage(text);
+                default -> new AssistantMessage(text);
+            };
+        }
+    }
+
+    private record PendingWrite(long version, StoredConversation conversation) {}
+
+    record StoredConversation(String conversationId, String summary, List<StoredMessage> messages) {}
+
+    record StoredMessage(MessageType type, String text) {}
+}
@@ -0,0 +1,145 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Serves document embeddings from an {@link EmbeddingCache} and only sends texts that are not cached yet
+ * to the delegate model. Identical chunks are therefore embedded once, whichever file they come from.
+ * <p>
+ * Plain text embeddings, which are queries, bypass the cache: they rarely repeat, and caching them would
+ * evict chunk embeddings and grow the cache file with every question. Callers that need a query vector
+ * twice keep it and pass it on, see {@link VectorSearch}.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String modelName;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String modelName, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.modelName = modelName;
+        this.hits = Counter.builder("embedding.cache.hits")
+                .description("Embeddings served from the local cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("embedding.cache.misses")
+                .description("Embeddings that had to be computed by the model")
+                .register(meterRegistry);
+        Gauge.builder("embedding.cache.size", cache, EmbeddingCache::size)
+                .description("Number of embeddings held in the local cache")
+                .register(meterRegistry);
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String model = modelFor(request.getOptions());
+        float[][] vectors = new float[texts.size()][];
+        List<Integer> missing = lookup(texts, model, vectors);
+
+        if (!missing.isEmpty()) {
+            List<String> missingTexts = missing.stream().map(texts::get).toList();
+            List<Embedding> computed = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions())).getResults();
+            for (int i = 0; i < missing.size(); i++) {
+                store(missing.get(i), texts, model, computed.get(i).getOutput(), vectors);
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return delegate.embed(text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        EmbeddingCache.Key key = EmbeddingCache.key(modelName, document.getText());
+        float[] cached = cache.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        float[] vector = delegate.embed(document);
+        cache.put(key, vector);
+        return vector;
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        List<String> texts = documents.stream().map(Document::getText).toList();
+        String model = modelFor(options);
+        float[][] vectors = new float[texts.size()][];
+        List<Integer> missing = lookup(texts, model, vectors);
+
+        if (!missing.isEmpty()) {
+            List<Document> missingDocuments = missing.stream().map(documents::get).toList();
+            List<float[]> computed = delegate.embed(missingDocuments, options, batchingStrategy);
+            for (int i = 0; i < missing.size(); i++) {
+                store(missing.get(i), texts, model, computed.get(i), vectors);
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private List<Integer> lookup(List<String> texts, String model, float[][] vectors) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            vectors[i] = cache.get(EmbeddingCache.key(model, texts.get(i)));
+            if (vectors[i] == null) {
+                missing.add(i);
+            }
+        }
+        hits.increment(texts.size() - missing.size());
+        misses.increment(missing.size());
+        return missing;
+    }
+
+    private void store(int index, List<String> texts, String model, float[] vector, float[][] vectors) {
+        vectors[index] = vector;
+        cache.put(EmbeddingCache.key(model, texts.get(index)), vector);
+    }
+
+    private String modelFor(EmbeddingOptions options) {
+        return options != null && options.getModel() != null ? options.getModel() : modelName;
+    }
+}
@@ -0,0 +1,223 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control in front of the local chat model, shared by every caller.
+ * <p>
+ * At most {@code max-in-flight} generations run at once. Further calls wait in one bounded queue ordered by
+ * priority and then arrival, so interactive chat overtakes batch mail without reordering callers of the same
+ * priority. A call is rejected with 429 right away when the queue is full, or when it waited longer than the
+ * queue timeout, instead of piling up inside Ollama until every request times out together.
+ * <p>
+ * Callers get a {@link ChatModel} view per endpoint from {@link #model}; the endpoint names the metrics and
+ * its priority can be overridden with {@code chat.gateway.priority.<endpoint>}.
+ */
+@Slf4j
+@Component
+public class ChatGateway {
+
+    public enum Priority { INTERACTIVE, STANDARD, BATCH }
+
+    private final ChatModel chatModel;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final int maxInFlight;
+    private final int queueCapacity;
+    private final Duration queueTimeout;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+    private int inFlight;
+    private long sequence;
+
+    public ChatGateway(ChatModel chatModel,
+                       Environment environment,
+                       MeterRegistry meterRegistry,
+                       @Value("${chat.gateway.max-in-flight:2}") int maxInFlight,
+                       @Value("${chat.gateway.queue-capacity:50}") int queueCapacity,
+                       @Value("${chat.gateway.queue-timeout:30s}") Duration queueTimeout) {
+        this.chatModel = chatModel;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.maxInFlight = maxInFlight;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeout = queueTimeout;
+
+        Gauge.builder("chat.gateway.in-flight", this, gateway -> gateway.inFlight())
+                .description("Chat model calls currently running")
+                .register(meterRegistry);
+        Gauge.builder("chat.gateway.queued", this, gateway -> gateway.queued())
+                .description("Chat model calls waiting for a slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The chat model as seen by one endpoint, every call through it passes the gateway
+     */
+    public ChatModel model(String endpoint, Priority defaultPriority) {
+        Priority priority = environment.getProperty("chat.gateway.priority." + endpoint, Priority.class, defaultPriority);
+        return new GatedChatModel(endpoint, priority);
+    }
+
+    int inFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    int queued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private void acquire(GatedChatModel caller) {
+        Waiter waiter;
+        synchronized (lock) {
+            if (inFlight < maxInFlight && queue.isEmpty()) {
+                inFlight++;
+                caller.queueWait.record(0, TimeUnit.NANOSECONDS);
+                return;
+            }
+            if (queue.size() >= queueCapacity) {
+                caller.rejectedQueueFull.increment();
+                throw new ChatRejectedException("Chat model is busy, " + queue.size() + " requests are already waiting");
+            }
+            waiter = new Waiter(caller.priority, sequence++, new CountDownLatch(1));
+            queue.add(waiter);
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!waiter.granted().await(queueTimeout.toMillis(), TimeUnit.MILLISECONDS) && abandon(waiter)) {
+                caller.rejectedTimeout.increment();
+                throw new ChatRejectedException("Chat model is busy, no slot became free within " + queueTimeout);
+            }
+            // Otherwise the slot was handed over, possibly just as the wait timed out
+        } catch (InterruptedException e) {
+            if (!abandon(waiter)) {
+                release();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the chat model", e);
+        } finally {
+            caller.queueWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Hand the slot straight to the next waiter, so a newly arriving call cannot overtake the queue
+     */
+    private void release() {
+        synchronized (lock) {
+            Waiter next = queue.poll();
+            if (next != null) {
+                next.granted().countDown();
+            } else {
+                inFlight--;
+            }
+        }
+    }
+
+    /**
+     * @return whether the waiter was still queued, false if it had been granted a slot meanwhile
+     */
+    private boolean abandon(Waiter waiter) {
+        synchronized (lock) {
+            return queue.remove(waiter);
+        }
+    }
+
+    private record Waiter(Priority priority, long sequence, CountDownLatch granted) {}
+
+    /**
+     * Answered with 429 Too Many Requests
+     */
+    public static class ChatRejectedException extends ResponseStatusException {
+
+        public ChatRejectedException(String reason) {
+            super(HttpStatus.TOO_MANY_REQUESTS, reason);
+        }
+    }
+
+    private class GatedChatModel implements ChatModel {
+
+        private final Priority priority;
+        private final Timer queueWait;
+        private final Counter rejectedQueueFull;
+        private final Counter rejectedTimeout;
+
+        GatedChatModel(String endpoint, Priority priority) {
+            this.priority = priority;
+            this.queueWait = Timer.builder("chat.gateway.queue-wait")
+                    .description("Time a chat model call waited for a slot")
+                    .tag("endpoint", endpoint)
+                    .tag("priority", priority.name())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            this.rejectedQueueFull = rejectedCounter(endpoint, "queue-full");
+            this.rejectedTimeout = rejectedCounter(endpoint, "timeout");
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            acquire(this);
+            try {
+                return chatModel.call(prompt);
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * The slot is taken when the stream is subscribed and held until it completes, fails or is cancelled
+         */
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> {
+                acquire(this);
+                try {
+                    return chatModel.stream(prompt).doFinally(signal -> release());
+                } catch (RuntimeException e) {
+                    release();
+                    throw e;
+                }
+            });
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return chatModel.getDefaultOptions();
+        }
+
+        private Counter rejectedCounter(String endpoint, String reason) {
+            return Counter.builder("chat.gateway.rejected")
+                    .description("Chat model calls rejected with 429")
+                    .tag("endpoint", endpoint)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ai.com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chroma.vectorstore.ChromaApi;
+import org.springframework.ai.chroma.vectorstore.ChromaVectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries that go straight to the Chroma API: chunk bookkeeping, which needs no query embedding and pages
+ * through every match instead of stopping at topK, and similarity search with a query embedding the caller
+ * already has, which the vector store would compute again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "chroma", matchIfMissing = true)
+public class ChromaChunkStore implements ChunkStore, VectorSearch {
+
+    private final ChromaApi chromaApi;
+    private final ChromaVectorStore chromaVectorStore;
+    private final int pageSize;
+    private final int deleteBatchSize;
+
+    public ChromaChunkStore(ChromaApi chromaApi,
+                            ChromaVectorStore chromaVectorStore,
+                            @Value("${chroma.query.page-size:500}") int pageSize,
+                            @Value("${chroma.delete.batch-size:500}") int deleteBatchSize) {
+        this.chromaApi = chromaApi;
+        this.chromaVectorStore = chromaVectorStore;
+        this.pageSize = pageSize;
+        this.deleteBatchSize = deleteBatchSize;
+    }
+
+    @Override
+    public List<String> findChunkIds(String filename) {
+        Map<String, Object> where = Map.of("filename", Map.of("$eq", filename));
+        List<String> ids = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            // An empty include list asks Chroma for ids only, no documents, metadata or vectors
+            ChromaApi.GetEmbeddingsRequest request = new ChromaApi.GetEmbeddingsRequest(
+                    null, where, pageSize, offset, List.of());
+            List<String> page = chromaApi.getEmbeddings(chromaVectorStore.getCollectionId(), request).ids();
+            ids.addAll(page);
+            if (page.size() < pageSize) {
+                break;
+            }
+            offset += pageSize;
+        }
+        log.debug("Found {} chunks in ChromaDB for file '{}'", ids.size(), filename);
+        return ids;
+    }
+
+    @Override
+    public List<Document> findChunks(String filename) {
+        Map<String, Object> where = Map.of("filename", Map.of("$eq", filename));
+        List<Document> chunks = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            ChromaApi.GetEmbeddingsRequest request = new ChromaApi.GetEmbeddingsRequest(null, where, pageSize, offset,
+                    List.of(ChromaApi.QueryRequest.Include.DOCUMENTS, ChromaApi.QueryRequest.Include.METADATAS));
+            ChromaApi.GetEmbeddingResponse page = chromaApi.getEmbeddings(chromaVectorStore.getCollectionId(), request);
+            for (int i = 0; i < page.ids().size(); i++) {
+                chunks.add(Document.builder()
+                        .id(page.ids().get(i))
+                        .text(page.documents().get(i))
+                        .metadata(page.metadata() != null && page.metadata().get(i) != null ? page.metadata().get(i) : Map.of())
+                        .build());
+            }
+            if (page.ids().size() < pageSize) {
+                break;
+            }
+            offset += pageSize;
+        }
+        return chunks;
+    }
+
+    @Override
+    public Map<String, List<String>> findChunkIdsByFilename() {
+        Map<String, List<String>> idsByFilename = new HashMap<>();
+        int offset = 0;
+        while (true) {
+            ChromaApi.GetEmbeddingsRequest request = new ChromaApi.GetEmbeddingsRequest(
+                    null, null, pageSize, offset, List.of(ChromaApi.QueryRequest.Include.METADATAS));
+            ChromaApi.GetEmbeddingResponse page = chromaApi.getEmbeddings(chromaVectorStore.getCollectionId(), request);
+            for (int i = 0; i < page.ids().size(); i++) {
+                Map<String, Object> metadata = page.metadata() != null ? page.metadata().get(i) : null;
+                Object filename = metadata != null ? metadata.get("filename") : null;
+                if (filename != null) {
+                    idsByFilename.computeIfAbsent(filename.toString(), name -> new ArrayList<>()).add(page.ids().get(i));
+                }
+            }
+            if (page.ids().size() < pageSize) {
+                break;
+            }
+            offset += pageSize;
+        }
+        return idsByFilename;
+    }
+
+    /**
+     * Same results as {@link ChromaVectorStore#similaritySearch(SearchRequest)}: Chroma's cosine distance in the
+     * {@code distance} metadata, {@code 1 - distance} as score and threshold
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding) {
+        Map<String, Object> where = request.getFilterExpression() != null ? where(request.getFilterExpression()) : null;
+        ChromaApi.QueryResponse response = chromaApi.queryCollection(chromaVectorStore.getCollectionId(),
+                new ChromaApi.QueryRequest(queryEmbedding, request.getTopK(), where));
+        List<Document> results = new ArrayList<>();
+        for (ChromaApi.Embedding match : chromaApi.toEmbeddingResponseList(response)) {
+            double distance = match.distances();
+            if (1 - distance < request.getSimilarityThreshold()) {
+                continue;
+            }
+            Map<String, Object> metadata = match.metadata() != null ? new HashMap<>(match.metadata()) : new HashMap<>();
+            metadata.put("distance", distance);
+            results.add(Document.builder()
+                    .id(match.id())
+                    .text(match.document())
+                    .metadata(metadata)
+                    .score(1 - distance)
+                    .build());
+        }
+        return results;
+    }
+
+    /**
+     * Delete chunks by id, at most {@code chroma.delete.batch-size} ids per request
+     */
+    @Override
+    public void delete(List<String> ids) {
+        for (int from = 0; from < ids.size(); from += deleteBatchSize) {
+            List<String> batch = ids.subList(from, Math.min(from + deleteBatchSize, ids.size()));
+            chromaVectorStore.delete(batch);
+        }
+        if (!ids.isEmpty()) {
+            log.debug("Deleted {} chunks from ChromaDB in batches of {}", ids.size(), deleteBatchSize);
+        }
+    }
+
+    /**
+     * Chroma's where clause for a filter expression, e.g. {@code {"$and": [{"source": {"$eq": "uploaded"}}, ...]}}
+     */
+    static Map<String, Object> where(Filter.Expression expression) {
+        return switch (expression.type()) {
+            case AND -> Map.of("$and", List.of(where(operand(expression.left())), where(operand(expression.right()))));
+            case OR -> Map.of("$or", List.of(where(operand(expression.left())), where(operand(expression.right()))));
+            case NOT -> throw new IllegalArgumentException("Chroma filters do not support NOT");
+            case EQ -> condition(expression, "$eq");
+            case NE -> condition(expression, "$ne");
+            case GT -> condition(expression, "$gt");
+            case GTE -> condition(expression, "$gte");
+            case LT -> condition(expression, "$lt");
+            case LTE -> condition(expression, "$lte");
+            case IN -> condition(expression, "$in");
+            case NIN -> condition(expression, "$nin");
+        };
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        throw new IllegalArgumentException("Expected a filter expression but got " + operand);
+    }
+
+    private static Map<String, Object> condition(Filter.Expression expression, String operator) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Expected a metadata key and a value in " + expression.type());
+        }
+        // The text parser keeps quotes around keys that need them
+        String name = key.key().replaceAll("^[\"']|[\"']$", "");
+        return Map.of(name, Map.of(operator, value.value()));
+    }
+}
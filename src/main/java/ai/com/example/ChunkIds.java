@@ -0,0 +1,62 @@
+package ai.com.example;
+
+import org.springframework.ai.document.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Deterministic chunk ids derived from the file name and the chunk's content, so re-processing
+ * an unchanged chunk yields the same id and only new or vanished chunks need to be touched
+ */
+public final class ChunkIds {
+
+    private ChunkIds() {
+    }
+
+    /**
+     * Copy the chunks with stable ids. Identical chunks within one file are told apart by their occurrence.
+     */
+    public static List<Document> assign(String filename, List<Document> chunks) {
+        return assign(filename, chunks, new HashMap<>());
+    }
+
+    /**
+     * Like {@link #assign(String, List)} for a file that is handed over in parts: passing the same
+     * {@code occurrences} for every part yields the ids the whole file would get at once.
+     */
+    public static List<Document> assign(String filename, List<Document> chunks, Map<String, Integer> occurrences) {
+        List<Document> identified = new ArrayList<>(chunks.size());
+        for (Document chunk : chunks) {
+            String contentHash = sha256Hex(chunk.getText());
+            int occurrence = occurrences.merge(contentHash, 1, Integer::sum) - 1;
+            identified.add(Document.builder()
+                    .id(chunkId(filename, contentHash, occurrence))
+                    .text(chunk.getText())
+                    .metadata(chunk.getMetadata())
+                    .build());
+        }
+        return identified;
+    }
+
+    public static String chunkId(String filename, String contentHash, int occurrence) {
+        String name = filename + '\u0000' + contentHash + '\u0000' + occurrence;
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public static String sha256Hex(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ai.com.example;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk bookkeeping on the active vector store: listing and deleting the chunks of a file by their
+ * {@code filename} metadata without a similarity search
+ */
+public interface ChunkStore {
+
+    /**
+     * Ids of every chunk stored for the given file
+     */
+    List<String> findChunkIds(String filename);
+
+    /**
+     * Ids of every stored chunk grouped by their {@code filename} metadata
+     */
+    Map<String, List<String>> findChunkIdsByFilename();
+
+    /**
+     * Every chunk stored for the given file with its text and metadata, but without the vector
+     */
+    List<Document> findChunks(String filename);
+
+    void delete(List<String> ids);
+}
@@ -0,0 +1,211 @@
+package ai.com.example;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.BreakIterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The text splitter for ingestion, one instance shared by all threads. The tokenizer is loaded once, and
+ * jtokkit encodings are thread-safe. Everything else is created per call, so concurrent splits do not
+ * interfere.
+ * <p>
+ * Strategies, chosen with {@code chunking.strategy}:
+ * <ul>
+ *     <li>TOKEN: windows of {@code chunk-size} tokens, cut back to the last sentence end when that leaves at
+ *     least {@code min-chunk-chars}, like Spring AI's {@code TokenTextSplitter}</li>
+ *     <li>SENTENCE: whole sentences packed up to {@code chunk-size} tokens</li>
+ *     <li>HEADING: sections starting at lines matching {@code heading-pattern}, each packed by sentence, with
+ *     the heading repeated at the top of every chunk of its section</li>
+ * </ul>
+ * Consecutive chunks share about {@code overlap} tokens. Chunks of at most {@code min-chunk-length-to-embed}
+ * characters are dropped.
+ */
+@Component
+public class ChunkingService extends TextSplitter {
+
+    public enum Strategy { TOKEN, SENTENCE, HEADING }
+
+    private static final Pattern LINE_BREAKS = Pattern.compile("\\R");
+
+    private final Encoding encoding;
+    private final Strategy strategy;
+    private final int chunkSize;
+    private final int overlap;
+    private final int minChunkChars;
+    private final int minChunkLengthToEmbed;
+    private final Pattern headingPattern;
+
+    public ChunkingService(@Value("${chunking.strategy:TOKEN}") Strategy strategy,
+                           @Value("${chunking.chunk-size:800}") int chunkSize,
+                           @Value("${chunking.overlap:0}") int overlap,
+                           @Value("${chunking.min-chunk-chars:350}") int minChunkChars,
+                           @Value("${chunking.min-chunk-length-to-embed:5}") int minChunkLengthToEmbed,
+                           @Value("${chunking.heading-pattern:^(#+ |Q: ).+}") String headingPattern) {
+        if (overlap >= chunkSize) {
+            throw new IllegalArgumentException("chunking.overlap must be smaller than chunking.chunk-size");
+        }
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+        this.strategy = strategy;
+        this.chunkSize = chunkSize;
+        this.overlap = overlap;
+        this.minChunkChars = minChunkChars;
+        this.minChunkLengthToEmbed = minChunkLengthToEmbed;
+        this.headingPattern = Pattern.compile(headingPattern);
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    /**
+     * Split one text with the configured strategy
+     */
+    public List<String> chunk(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return chunks;
+        }
+        switch (strategy) {
+            case TOKEN -> byTokens(text, chunks);
+            case SENTENCE -> bySentences(text, "", chunkSize, chunks);
+            case HEADING -> byHeadings(text, chunks);
+        }
+        return chunks;
+    }
+
+    @Override
+    protected List<String> splitText(String text) {
+        return chunk(text);
+    }
+
+    private void byTokens(String text, List<String> chunks) {
+        IntArrayList tokens = encoding.encode(text);
+        int start = 0;
+        while (start < tokens.size()) {
+            int end = Math.min(tokens.size(), start + chunkSize);
+            String chunkText = encoding.decode(slice(tokens, start, end));
+            if (end < tokens.size()) {
+                int lastPunctuation = Math.max(Math.max(chunkText.lastIndexOf('.'), chunkText.lastIndexOf('?')),
+                        Math.max(chunkText.lastIndexOf('!'), chunkText.lastIndexOf('\n')));
+                if (lastPunctuation >= minChunkChars) {
+                    chunkText = chunkText.substring(0, lastPunctuation + 1);
+                    end = start + encoding.countTokens(chunkText);
+                }
+            }
+            add(chunks, "", chunkText);
+            if (end >= tokens.size()) {
+                break;
+            }
+            start = Math.max(start + 1, end - overlap);
+        }
+    }
+
+    /**
+     * Pack whole sentences up to the budget; a sentence longer than the budget is cut into token windows
+     */
+    private void bySentences(String text, String heading, int budget, List<String> chunks) {
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(text);
+        Deque<Sentence> current = new ArrayDeque<>();
+        int currentTokens = 0;
+
+        for (int start = sentences.first(), end = sentences.next(); end != BreakIterator.DONE; start = end, end = sentences.next()) {
+            String sentence = text.substring(start, end);
+            int tokens = encoding.countTokens(sentence);
+            if (tokens > budget) {
+                flush(current, heading, chunks);
+                currentTokens = 0;
+                IntArrayList encoded = encoding.encode(sentence);
+                for (int from = 0; from < encoded.size(); from += budget - Math.min(overlap, budget - 1)) {
+                    add(chunks, heading, encoding.decode(slice(encoded, from, Math.min(encoded.size(), from + budget))));
+                }
+                continue;
+            }
+            if (currentTokens + tokens > budget && !current.isEmpty()) {
+                // Carry the last sentences into the next chunk while they fit the overlap
+                Deque<Sentence> carried = new ArrayDeque<>();
+                int carriedTokens = 0;
+                for (var it = current.descendingIterator(); it.hasNext(); ) {
+                    Sentence previous = it.next();
+                    if (carriedTokens + previous.tokens() > overlap || carriedTokens + previous.tokens() + tokens > budget) {
+                        break;
+                    }
+                    carried.addFirst(previous);
+                    carriedTokens += previous.tokens();
+                }
+                flush(current, heading, chunks);
+                current = carried;
+                currentTokens = carriedTokens;
+            }
+            current.addLast(new Sentence(sentence, tokens));
+            currentTokens += tokens;
+        }
+        flush(current, heading, chunks);
+    }
+
+    private void byHeadings(String text, List<String> chunks) {
+        String heading = "";
+        StringBuilder section = new StringBuilder();
+        for (String line : LINE_BREAKS.split(text)) {
+            if (headingPattern.matcher(line).matches()) {
+                section(heading, section, chunks);
+                heading = line.strip();
+                section.setLength(0);
+            } else {
+                section.append(line).append('\n');
+            }
+        }
+        section(heading, section, chunks);
+    }
+
+    private void section(String heading, StringBuilder body, List<String> chunks) {
+        if (body.isEmpty() || body.toString().isBlank()) {
+            add(chunks, "", heading);
+            return;
+        }
+        String prefix = heading.isEmpty() ? "" : heading + "\n";
+        int budget = Math.max(overlap + 1, chunkSize - encoding.countTokens(prefix));
+        bySentences(body.toString(), prefix, budget, chunks);
+    }
+
+    private void flush(Deque<Sentence> sentences, String heading, List<String> chunks) {
+        if (sentences.isEmpty()) {
+            return;
+        }
+        StringBuilder chunk = new StringBuilder();
+        for (Sentence sentence : sentences) {
+            chunk.append(sentence.text());
+        }
+        add(chunks, heading, chunk.toString());
+        sentences.clear();
+    }
+
+    private void add(List<String> chunks, String heading, String text) {
+        String chunk = heading + text.strip();
+        if (chunk.strip().length() > minChunkLengthToEmbed) {
+            chunks.add(chunk.strip());
+        }
+    }
+
+    private static IntArrayList slice(IntArrayList tokens, int from, int to) {
+        IntArrayList slice = new IntArrayList(to - from);
+        for (int i = from; i < to; i++) {
+            slice.add(tokens.get(i));
+        }
+        return slice;
+    }
+
+    private record Sentence(String text, int tokens) {}
+}
@@ -0,0 +1,6 @@
+package ai.com.example;
+
+/**
+ * Published whenever chunks of a document are written to or removed from the vector store
+ */
+public record CorpusChangedEvent(String filename) {}
@@ -1,16 +1,11 @@
 package ai.com.example;
 
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chroma.vectorstore.ChromaVectorStore;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.transformer.splitter.TextSplitter;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -27,17 +22,34 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/documents")
 public class DocumentManagementController {
 
-    private final Path uploadDir = Paths.get("uploads");
-    private final ChromaVectorStore chromaVectorStore;
+    private final Path uploadDir;
+    private final ChunkStore chunkStore;
+    private final IngestionService ingestionService;
+    private final DocumentRegistry documentRegistry;
+    private final LexicalIndex lexicalIndex;
+    private final DocumentUploadService uploadService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public DocumentManagementController(ChromaVectorStore chromaVectorStore) {
-        this.chromaVectorStore = chromaVectorStore;
+    public DocumentManagementController(ChunkStore chunkStore,
+                                        IngestionService ingestionService,
+                                        DocumentRegistry documentRegistry,
+                                        LexicalIndex lexicalIndex,
+                                        DocumentUploadService uploadService,
+                                        ApplicationEventPublisher eventPublisher,
+                                        @Value("${documents.upload-dir:uploads}") String uploadDir) {
+        this.chunkStore = chunkStore;
+        this.ingestionService = ingestionService;
+        this.documentRegistry = documentRegistry;
+        this.lexicalIndex = lexicalIndex;
+        this.uploadService = uploadService;
+        this.eventPublisher = eventPublisher;
+        this.uploadDir = Paths.get(uploadDir);
 
         // Ensure upload directory exists
         try {
-            if (!Files.exists(uploadDir)) {
-                Files.createDirectories(uploadDir);
+            if (!Files.exists(this.uploadDir)) {
+                Files.createDirectories(this.uploadDir);
             }
         } catch (IOException e) {
             throw new RuntimeException("Could not initialize storage location", e);
@@ -55,11 +67,12 @@ public class DocumentManagementController {
 
         for (MultipartFile file : files) {
             try {
-                // Save file locally
+                // Save file locally, hashing on the way to reject duplicates
                 String filename = file.getOriginalFilename();
-                Path targetPath = uploadDir.resolve(filename);
-                Files.copy(file.getInputStream(), targetPath);
+                uploadService.store(filename, file.getInputStream(), file.getSize(), null);
                 uploadedFiles.add(filename);
+            } catch (DocumentUploadService.UploadRejectedException e) {
+                failedFiles.add(file.getOriginalFilename() + " (" + e.getMessage() + ")");
             } catch (IOException e) {
                 failedFiles.add(file.getOriginalFilename());
             }
@@ -76,33 +89,105 @@ public class DocumentManagementController {
     }
 
     /**
-     * List all available documents
+     * Stream a single file from the raw request body straight to disk, without multipart buffering.
+     * An optional X-Content-SHA256 header lets a known duplicate be rejected before any byte is read.
      */
+    @PutMapping("/stream/{filename}")
+    public ResponseEntity<Map<String, Object>> streamUpload(@PathVariable String filename,
+                                                            @RequestHeader(value = "X-Content-SHA256", required = false) String expectedHash,
+                                                            HttpServletRequest request) throws IOException {
+        DocumentUploadService.StoredFile stored = uploadService.store(
+                filename, request.getInputStream(), request.getContentLengthLong(), expectedHash);
+        return ResponseEntity.status(HttpStatus.CREATED).body(storedFileResponse(stored));
+    }
+
+    /**
+     * Start a resumable upload; chunks are then sent with PUT /uploads/{id}?offset=n
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<Map<String, Object>> startUpload(@RequestBody UploadRequest uploadRequest) throws IOException {
+        DocumentUploadService.UploadSession session = uploadService.startSession(
+                uploadRequest.filename(), uploadRequest.size(), uploadRequest.sha256());
+        return ResponseEntity.status(HttpStatus.CREATED).body(sessionResponse(session));
+    }
+
+    @PutMapping("/uploads/{id}")
+    public ResponseEntity<Map<String, Object>> uploadChunk(@PathVariable String id,
+                                                           @RequestParam("offset") long offset,
+                                                           HttpServletRequest request) throws IOException {
+        DocumentUploadService.UploadSession session = uploadService.appendChunk(
+                id, offset, request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.ok(sessionResponse(session));
+    }
+
+    @GetMapping("/uploads/{id}")
+    public ResponseEntity<Map<String, Object>> getUpload(@PathVariable String id) {
+        return uploadService.getSession(id)
+                .map(session -> ResponseEntity.ok(sessionResponse(session)))
+                .orElseGet(() -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("error", "No upload session with id " + id);
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+                });
+    }
 
+    @PostMapping("/uploads/{id}/complete")
+    public ResponseEntity<Map<String, Object>> completeUpload(@PathVariable String id) throws IOException {
+        DocumentUploadService.StoredFile stored = uploadService.completeSession(id);
+        return ResponseEntity.status(HttpStatus.CREATED).body(storedFileResponse(stored));
+    }
+
+    @DeleteMapping("/uploads/{id}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String id) throws IOException {
+        uploadService.abortSession(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(DocumentUploadService.UploadRejectedException.class)
+    public ResponseEntity<Map<String, Object>> uploadRejected(DocumentUploadService.UploadRejectedException e) {
+        log.warn("Upload rejected: {}", e.getMessage());
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        return ResponseEntity.status(e.getStatus()).body(response);
+    }
+
+    private static Map<String, Object> storedFileResponse(DocumentUploadService.StoredFile stored) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("filename", stored.filename());
+        response.put("size", stored.size());
+        response.put("contentHash", stored.contentHash());
+        return response;
+    }
+
+    private static Map<String, Object> sessionResponse(DocumentUploadService.UploadSession session) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", session.getId());
+        response.put("filename", session.getFilename());
+        response.put("size", session.getTotalSize());
+        response.put("offset", session.getReceived());
+        return response;
+    }
+
+    public record UploadRequest(String filename, long size, String sha256) {}
+
+    /**
+     * List all available documents from the local document registry
+     */
     @GetMapping("/list")
-    public ResponseEntity<List<Map<String, Object>>> listDocuments() throws IOException {
+    public ResponseEntity<List<Map<String, Object>>> listDocuments() {
         log.info("Fetching document list...");
 
-        List<Map<String, Object>> fileList = Files.list(uploadDir)
-                .filter(Files::isRegularFile)
-                .map(path -> {
+        List<Map<String, Object>> fileList = documentRegistry.list().stream()
+                .map(record -> {
                     Map<String, Object> fileInfo = new HashMap<>();
-                    fileInfo.put("filename", path.getFileName().toString());
-                    try {
-                        fileInfo.put("size", Files.size(path));
-                        fileInfo.put("uploadTime", Files.getLastModifiedTime(path).toMillis());
-
-                        boolean inDb = isInChromaDb(path.getFileName().toString());
-                        fileInfo.put("inChromaDb", inDb);
-
-                        log.info("File: {} | Size: {} bytes | In ChromaDB: {}",
-                                path.getFileName().toString(),
-                                Files.size(path),
-                                inDb);
-                    } catch (IOException e) {
-                        fileInfo.put("error", "Could not read file metadata");
-                        log.error("Error reading metadata for file: {}", path.getFileName(), e);
-                    }
+                    fileInfo.put("filename", record.filename());
+                    fileInfo.put("size", record.size());
+                    fileInfo.put("uploadTime", record.uploadTime());
+                    fileInfo.put("contentHash", record.contentHash());
+                    fileInfo.put("inChromaDb", record.inChromaDb());
+                    fileInfo.put("chunkCount", record.chunkCount());
+                    fileInfo.put("indexedAt", record.indexedAt());
+                    fileInfo.put("embeddingModel", record.embeddingModel());
                     return fileInfo;
                 })
                 .collect(Collectors.toList());
@@ -113,150 +198,133 @@ public class DocumentManagementController {
 
 
     /**
-     * Process selected files and store them in ChromaDB
+     * Submit selected files for asynchronous processing into ChromaDB.
+     * In UPSERT mode (the default) only new chunks are embedded and vanished ones deleted.
      */
-
-
-
-
     @PostMapping("/process")
-    public ResponseEntity<Map<String, Object>> processFiles(@RequestBody List<String> filenames) {
-        log.info("Processing files: {}", filenames);
+    public ResponseEntity<Map<String, Object>> processFiles(@RequestBody List<String> filenames,
+                                                            @RequestParam(value = "mode", defaultValue = "UPSERT") IngestionService.IndexMode mode) {
+        log.info("Processing files: {} (mode {})", filenames, mode);
         Map<String, Object> response = new HashMap<>();
-        List<String> processedFiles = new ArrayList<>();
-        List<String> failedFiles = new ArrayList<>();
-        int totalDocuments = 0;
-
-        for (String filename : filenames) {
-            Path filePath = uploadDir.resolve(filename);
-
-            if (!Files.exists(filePath)) {
-                log.warn("File not found: {}", filename);
-                failedFiles.add(filename + " (file not found)");
-                continue;
-            }
 
-            try {
-                List<Document> documents;
-                Resource fileResource = new FileSystemResource(filePath);
-
-                // Use TikaDocumentReader for all file types
-                TikaDocumentReader tikaReader = new TikaDocumentReader(fileResource);
-                documents = tikaReader.get();
-                log.info("Extracted {} documents from file: {}", documents.size(), filename);
-
-                // Add metadata for filtering
-                for (Document doc : documents) {
-                    doc.getMetadata().put("source", "uploaded");
-                    doc.getMetadata().put("filename", filename);
-                }
-
-                // Split documents for better vector indexing
-                TextSplitter textSplitter = new TokenTextSplitter();
-                List<Document> splitDocuments = textSplitter.apply(documents);
-                log.info("Split into {} smaller documents for file: {}", splitDocuments.size(), filename);
-
-                // Add to ChromaDB
-                chromaVectorStore.add(splitDocuments);
-                log.info("Added {} documents to ChromaDB for file: {}", splitDocuments.size(), filename);
-
-                processedFiles.add(filename);
-                totalDocuments += splitDocuments.size();
-            } catch (Exception e) {
-                log.error("Error processing file {}: {}", filename, e.getMessage(), e);
-                failedFiles.add(filename + " (" + e.getMessage() + ")");
-            }
+        if (filenames == null || filenames.isEmpty()) {
+            response.put("error", "No files given to process");
+            return ResponseEntity.badRequest().body(response);
         }
 
-        response.put("processedFiles", processedFiles);
-        response.put("failedFiles", failedFiles);
-        response.put("totalDocumentsAdded", totalDocuments);
-
-        log.info("Processing completed. Total documents added: {}", totalDocuments);
+        IngestionJob job = ingestionService.submit(filenames, mode);
+        response.put("jobId", job.getId());
+        response.put("status", job.getStatus());
+        response.put("mode", job.getMode());
+        response.put("files", job.getFilenames());
+        response.put("statusUrl", "/api/documents/jobs/" + job.getId());
 
-        return failedFiles.isEmpty()
-                ? ResponseEntity.ok(response)
-                : ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(response);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
     }
 
-
-
-
-
     /**
-     * Check if a specific document is in ChromaDB by checking its metadata
+     * Status of an ingestion job with per-file progress
      */
-    public boolean isInChromaDb(String filename) {
-        log.info("Checking if file '{}' exists in ChromaDB...", filename);
-
-        SearchRequest searchRequest = SearchRequest.builder()
-                .topK(100)
-                .filterExpression("filename == '" + filename + "'")
-                .build();
-
-
-        List<Document> result = chromaVectorStore.doSimilaritySearch(searchRequest);
-
-        boolean exists = !result.isEmpty();
-        log.info("File '{}' in ChromaDB: {}", filename, exists);
-        return exists;
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String id) {
+        return ingestionService.getJob(id)
+                .map(job -> ResponseEntity.ok(job.toSummary()))
+                .orElseGet(() -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("error", "No ingestion job found with id " + id);
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+                });
     }
 
 
 
     /**
-     * Delete a document from ChromaDB (by metadata filter)
+     * Delete a document from ChromaDB and local storage
      */
     @DeleteMapping("/{filename}")
     public ResponseEntity<Map<String, Object>> deleteDocument(@PathVariable String filename) {
+        DeletionResult result = delete(filename);
+        return ResponseEntity.status(result.status()).body(result.body());
+    }
+
+    /**
+     * Delete many documents from ChromaDB and local storage in one request
+     */
+    @DeleteMapping
+    public ResponseEntity<Map<String, Object>> deleteDocuments(@RequestBody List<String> filenames) {
         Map<String, Object> response = new HashMap<>();
+        List<String> deletedFiles = new ArrayList<>();
+        List<String> notFoundFiles = new ArrayList<>();
+        List<String> failedFiles = new ArrayList<>();
+        Map<String, Object> details = new LinkedHashMap<>();
+
+        for (String filename : new LinkedHashSet<>(filenames)) {
+            DeletionResult result = delete(filename);
+            details.put(filename, result.body());
+            switch (result.status()) {
+                case OK -> deletedFiles.add(filename);
+                case NOT_FOUND -> notFoundFiles.add(filename);
+                default -> failedFiles.add(filename);
+            }
+        }
 
-        try {
-            // Step 1: Search for documents with metadata filter
-            SearchRequest searchRequest = SearchRequest.builder()
-                    .topK(100)
-                    .filterExpression("filename == '" + filename + "'")
-                    .build();
-            // Adjust based on expected document count
+        response.put("deleted", deletedFiles);
+        response.put("notFound", notFoundFiles);
+        response.put("failed", failedFiles);
+        response.put("details", details);
 
-            List<Document> documents = chromaVectorStore.similaritySearch(searchRequest);
+        // Multi-Status: the outcome of every file is in "details"
+        return deletedFiles.size() == details.size()
+                ? ResponseEntity.ok(response)
+                : ResponseEntity.status(HttpStatus.MULTI_STATUS).body(response);
+    }
 
-            if (documents.isEmpty()) {
+    private DeletionResult delete(String filename) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            // Step 1: Chunk ids from the registry plus those found in ChromaDB by filename, which also catches chunks
+            // the registry never recorded: stored before it existed, or by an ingestion that failed part way
+            Set<String> chunkIds = new LinkedHashSet<>(documentRegistry.get(filename)
+                    .map(DocumentRecord::chunkIds)
+                    .orElse(List.of()));
+            chunkIds.addAll(chunkStore.findChunkIds(filename));
+            List<String> documentIds = List.copyOf(chunkIds);
+
+            if (documentIds.isEmpty()) {
                 response.put("message", "No documents found in ChromaDB for the given filename");
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);  // Ensure a response is returned
+                return new DeletionResult(HttpStatus.NOT_FOUND, response);
+            }
+
+            // Step 2: Delete chunks by id in batches
+            try {
+                chunkStore.delete(documentIds);
+                lexicalIndex.remove(filename);
+                eventPublisher.publishEvent(new CorpusChangedEvent(filename));
+                response.put("message", "Documents deleted from ChromaDB");
+                response.put("chunksDeleted", documentIds.size());
+            } catch (Exception e) {
+                log.error("Failed to delete chunks of {} from ChromaDB: {}", filename, e.getMessage(), e);
+                response.put("error", "Failed to delete documents from ChromaDB");
+                return new DeletionResult(HttpStatus.INTERNAL_SERVER_ERROR, response);
+            }
+
+            // Step 3: Delete the file from local storage
+            Path filePath = uploadDir.resolve(filename);
+            if (Files.exists(filePath)) {
+                Files.delete(filePath);
+                response.put("fileDeletion", "Document deleted from local storage");
             } else {
-                // Step 2: Extract document IDs
-                List<String> documentIds = documents.stream()
-                        .map(Document::getId) // Ensure Document has an `id` field
-                        .toList();
-
-                // Step 3: Delete documents using IDs
-                try {
-                    chromaVectorStore.delete(documentIds); // This now returns void, no need to check success
-                    // Deletion was successful
-                    response.put("message", "Documents deleted from ChromaDB");
-                } catch (Exception e) {
-                    // Handle deletion failure
-                    response.put("error", "Failed to delete documents from ChromaDB");
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
-                }
-
-                // Step 4: Optionally delete the file from local storage
-                Path filePath = uploadDir.resolve(filename);
-                if (Files.exists(filePath)) {
-                    Files.delete(filePath);
-                    response.put("fileDeletion", "Document deleted from local storage");
-                } else {
-                    response.put("fileDeletion", "File not found in local storage");
-                }
-
-                return ResponseEntity.ok(response);
+                response.put("fileDeletion", "File not found in local storage");
             }
+            documentRegistry.remove(filename);
+
+            return new DeletionResult(HttpStatus.OK, response);
         } catch (Exception e) {
             response.put("error", "Failed to delete document: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            return new DeletionResult(HttpStatus.INTERNAL_SERVER_ERROR, response);
         }
     }
 
-
-}
\ No newline at end of file
+    private record DeletionResult(HttpStatus status, Map<String, Object> body) {}
+}
@@ -0,0 +1,36 @@
+package ai.com.example;
+
+import java.util.List;
+
+/**
+ * What the registry knows about one uploaded document and the chunks stored for it.
+ * {@code indexedAt} is {@code null} while the document has not been processed.
+ */
+public record DocumentRecord(String filename,
+                             long size,
+                             String contentHash,
+                             long uploadTime,
+                             List<String> chunkIds,
+                             Long indexedAt,
+                             String embeddingModel) {
+
+    public DocumentRecord {
+        chunkIds = chunkIds == null ? List.of() : List.copyOf(chunkIds);
+    }
+
+    public int chunkCount() {
+        return chunkIds.size();
+    }
+
+    public boolean inChromaDb() {
+        return !chunkIds.isEmpty();
+    }
+
+    public DocumentRecord withUpload(long size, String contentHash, long uploadTime) {
+        return new DocumentRecord(filename, size, contentHash, uploadTime, chunkIds, indexedAt, embeddingModel);
+    }
+
+    public DocumentRecord withChunks(List<String> chunkIds, Long indexedAt, String embeddingModel) {
+        return new DocumentRecord(filename, size, contentHash, uploadTime, chunkIds, indexedAt, embeddingModel);
+    }
+}
@@ -0,0 +1,124 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Local, persistent registry of uploaded documents and the chunk ids stored for them in the vector store.
+ * Upload, process and delete keep it current, so listing documents never has to query ChromaDB.
+ */
+@Slf4j
+@Component
+public class DocumentRegistry {
+
+    private static final TypeReference<List<DocumentRecord>> RECORD_LIST = new TypeReference<>() {};
+
+    private final Path registryFile;
+    private final ObjectMapper objectMapper;
+    private final Map<String, DocumentRecord> records = new ConcurrentHashMap<>();
+    private final ReentrantLock persistLock = new ReentrantLock();
+
+    public DocumentRegistry(ObjectMapper objectMapper,
+                            @Value("${documents.registry-file:data/document-registry.json}") String registryFile) throws IOException {
+        this.objectMapper = objectMapper;
+        this.registryFile = Paths.get(registryFile);
+        if (this.registryFile.getParent() != null) {
+            Files.createDirectories(this.registryFile.getParent());
+        }
+        if (Files.exists(this.registryFile)) {
+            for (DocumentRecord record : objectMapper.readValue(this.registryFile.toFile(), RECORD_LIST)) {
+                records.put(record.filename(), record);
+            }
+        }
+        log.info("Document registry loaded with {} documents", records.size());
+    }
+
+    public Optional<DocumentRecord> get(String filename) {
+        return Optional.ofNullable(records.get(filename));
+    }
+
+    public Optional<DocumentRecord> findByHash(String contentHash) {
+        return records.values().stream()
+                .filter(record -> contentHash.equals(record.contentHash()))
+                .findFirst();
+    }
+
+    /**
+     * All documents ordered by file name
+     */
+    public List<DocumentRecord> list() {
+        List<DocumentRecord> all = new ArrayList<>(records.values());
+        all.sort(Comparator.comparing(DocumentRecord::filename));
+        return all;
+    }
+
+    public void recordUpload(String filename, long size, String contentHash, long uploadTime) {
+        update(filename, record -> record.withUpload(size, contentHash, uploadTime));
+    }
+
+    public void recordChunks(String filename, List<String> chunkIds, String embeddingModel) {
+        Long indexedAt = chunkIds.isEmpty() ? null : System.currentTimeMillis();
+        update(filename, record -> record.withChunks(chunkIds, indexedAt, embeddingModel));
+    }
+
+    public void remove(String filename) {
+        if (records.remove(filename) != null) {
+            persist();
+        }
+    }
+
+    private void update(String filename, UnaryOperator<DocumentRecord> change) {
+        records.compute(filename, (name, existing) -> change.apply(existing != null
+                ? existing
+                : new DocumentRecord(name, -1, null, 0, List.of(), null, null)));
+        persist();
+    }
+
+    // A lock instead of synchronized, so virtual threads waiting for the file write don't pin their carriers
+    private void persist() {
+        Path tmp = registryFile.resolveSibling(registryFile.getFileName() + ".tmp");
+        persistLock.lock();
+        try {
+            objectMapper.writeValue(tmp.toFile(), list());
+            Files.move(tmp, registryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not write document registry {}: {}", registryFile, e.getMessage(), e);
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    /**
+     * SHA-256 of a file's content as hex
+     */
+    public static String hashFile(Path file) throws IOException {
+        try (DigestInputStream in = new DigestInputStream(Files.newInputStream(file), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
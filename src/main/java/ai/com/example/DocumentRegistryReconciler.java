@@ -0,0 +1,101 @@
+package ai.com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Repairs drift between the document registry, the upload directory, the lexical index and ChromaDB once
+ * the app has started. ChromaDB is authoritative for chunk ids, the upload directory for file size and content.
+ */
+@Slf4j
+@Component
+public class DocumentRegistryReconciler {
+
+    private final DocumentRegistry documentRegistry;
+    private final ChunkStore chunkStore;
+    private final LexicalIndex lexicalIndex;
+    private final Path uploadDir;
+
+    public DocumentRegistryReconciler(DocumentRegistry documentRegistry,
+                                      ChunkStore chunkStore,
+                                      LexicalIndex lexicalIndex,
+                                      @Value("${documents.upload-dir:uploads}") String uploadDir) {
+        this.documentRegistry = documentRegistry;
+        this.chunkStore = chunkStore;
+        this.lexicalIndex = lexicalIndex;
+        this.uploadDir = Paths.get(uploadDir);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        log.info("Reconciling document registry with {} and ChromaDB...", uploadDir);
+        try {
+            Map<String, List<String>> storedChunks = chunkStore.findChunkIdsByFilename();
+            Set<String> localFiles = reconcileLocalFiles();
+
+            Set<String> filenames = new HashSet<>(storedChunks.keySet());
+            filenames.addAll(localFiles);
+            documentRegistry.list().forEach(record -> filenames.add(record.filename()));
+
+            int repaired = 0;
+            for (String filename : filenames) {
+                List<String> chunkIds = storedChunks.getOrDefault(filename, List.of());
+                DocumentRecord record = documentRegistry.get(filename).orElse(null);
+
+                if (chunkIds.isEmpty()) {
+                    lexicalIndex.remove(filename);
+                } else if (!lexicalIndex.contains(filename)) {
+                    // Indexed before the lexical index existed, or its segment was lost
+                    lexicalIndex.index(filename, chunkStore.findChunks(filename));
+                    repaired++;
+                }
+
+                if (chunkIds.isEmpty() && !localFiles.contains(filename)) {
+                    // Neither stored nor indexed any more
+                    documentRegistry.remove(filename);
+                    repaired++;
+                } else if (record == null || !new HashSet<>(record.chunkIds()).equals(new HashSet<>(chunkIds))) {
+                    documentRegistry.recordChunks(filename, chunkIds, record != null ? record.embeddingModel() : null);
+                    repaired++;
+                }
+            }
+            log.info("Document registry reconciled: {} documents, {} entries repaired", documentRegistry.list().size(), repaired);
+        } catch (Exception e) {
+            log.error("Could not reconcile document registry with ChromaDB: {}", e.getMessage(), e);
+        }
+    }
+
+    private Set<String> reconcileLocalFiles() throws IOException {
+        Set<String> localFiles = new HashSet<>();
+        if (!Files.exists(uploadDir)) {
+            return localFiles;
+        }
+        try (Stream<Path> paths = Files.list(uploadDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                String filename = path.getFileName().toString();
+                localFiles.add(filename);
+
+                long size = Files.size(path);
+                DocumentRecord record = documentRegistry.get(filename).orElse(null);
+                if (record == null || record.size() != size || record.contentHash() == null) {
+                    documentRegistry.recordUpload(filename, size, DocumentRegistry.hashFile(path),
+                            Files.getLastModifiedTime(path).toMillis());
+                }
+            }
+        }
+        return localFiles;
+    }
+}
@@ -0,0 +1,401 @@
+package ai.com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes uploads straight from the request stream to disk through NIO channels, hashing the bytes
+ * as they pass so duplicates are detected without a second read.
+ * <p>
+ * Concurrent uploads share a budget of in-flight megabytes; a request reserves as many as its declared
+ * length and is turned away when the budget is exhausted for longer than the admission timeout.
+ * Large files can also be sent as a resumable session of sequential chunks.
+ */
+@Slf4j
+@Service
+public class DocumentUploadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final Path uploadDir;
+    private final Path partialDir;
+    private final DocumentRegistry documentRegistry;
+    private final long maxFileSize;
+    private final int inFlightBudgetMb;
+    private final Semaphore inFlightMegabytes;
+    private final Duration admissionTimeout;
+    private final Duration sessionTtl;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public DocumentUploadService(DocumentRegistry documentRegistry,
+                                 @Value("${documents.upload-dir:uploads}") String uploadDir,
+                                 @Value("${documents.upload.max-file-size:2GB}") DataSize maxFileSize,
+                                 @Value("${documents.upload.max-in-flight:512MB}") DataSize maxInFlight,
+                                 @Value("${documents.upload.admission-timeout:5s}") Duration admissionTimeout,
+                                 @Value("${documents.upload.session-ttl:24h}") Duration sessionTtl) throws IOException {
+        this.documentRegistry = documentRegistry;
+        this.uploadDir = Paths.get(uploadDir).normalize();
+        this.partialDir = this.uploadDir.resolve(".partial");
+        this.maxFileSize = maxFileSize.toBytes();
+        this.inFlightBudgetMb = (int) Math.max(1, maxInFlight.toMegabytes());
+        this.inFlightMegabytes = new Semaphore(inFlightBudgetMb, true);
+        this.admissionTimeout = admissionTimeout;
+        this.sessionTtl = sessionTtl;
+        Files.createDirectories(partialDir);
+    }
+
+    /**
+     * Store a complete file from a request body of known length
+     */
+    public StoredFile store(String filename, InputStream body, long contentLength, String expectedHash) throws IOException {
+        Path target = resolveTarget(filename);
+        rejectKnownHash(expectedHash);
+        checkSize(contentLength);
+
+        int reserved = admit(contentLength);
+        Path tmp = partialDir.resolve(UUID.randomUUID() + ".part");
+        try {
+            MessageDigest digest = sha256();
+            long written;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                written = copy(body, out, digest, contentLength);
+            }
+            if (written != contentLength) {
+                throw new UploadRejectedException(HttpStatus.BAD_REQUEST,
+                        "Body ended after " + written + " of " + contentLength + " bytes");
+            }
+            return publish(filename, target, tmp, written, HexFormat.of().formatHex(digest.digest()), expectedHash);
+        } finally {
+            inFlightMegabytes.release(reserved);
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Open a resumable upload session; chunks are then appended in order until the session is completed
+     */
+    public UploadSession startSession(String filename, long totalSize, String expectedHash) throws IOException {
+        expireIdleSessions();
+        resolveTarget(filename);
+        rejectKnownHash(expectedHash);
+        checkSize(totalSize);
+
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), filename, totalSize, expectedHash,
+                partialDir.resolve(UUID.randomUUID() + ".part"), sha256());
+        Files.createFile(session.partFile);
+        sessions.put(session.id, session);
+        log.info("Started upload session {} for {} ({} bytes)", session.id, filename, totalSize);
+        return session;
+    }
+
+    public Optional<UploadSession> getSession(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId));
+    }
+
+    /**
+     * Append one chunk at the given offset, which must be the number of bytes received so far
+     */
+    public UploadSession appendChunk(String sessionId, long offset, InputStream body, long contentLength) throws IOException {
+        UploadSession session = requireSession(sessionId);
+        // A lock rather than a monitor: the request body is read while holding it, which would pin a virtual thread
+        session.lock.lock();
+        try {
+            if (offset != session.received) {
+                throw new UploadRejectedException(HttpStatus.CONFLICT,
+                        "Expected offset " + session.received + " but got " + offset);
+            }
+            if (contentLength < 0) {
+                throw new UploadRejectedException(HttpStatus.LENGTH_REQUIRED, "Content-Length is required");
+            }
+            if (session.totalSize >= 0 && session.received + contentLength > session.totalSize) {
+                throw new UploadRejectedException(HttpStatus.BAD_REQUEST, "Chunk goes past the declared file size");
+            }
+
+            int reserved = admit(contentLength);
+            MessageDigest checkpoint = cloneDigest(session.digest);
+            try (FileChannel out = FileChannel.open(session.partFile, StandardOpenOption.WRITE)) {
+                out.position(session.received);
+                session.received += copy(body, out, session.digest, contentLength);
+            } catch (IOException | RuntimeException e) {
+                // Roll back to the end of the last complete chunk so the client can resend this one at the same offset
+                session.digest = checkpoint;
+                try (FileChannel out = FileChannel.open(session.partFile, StandardOpenOption.WRITE)) {
+                    out.truncate(session.received);
+                }
+                throw e;
+            } finally {
+                session.touch();
+                inFlightMegabytes.release(reserved);
+            }
+            return session;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public StoredFile completeSession(String sessionId) throws IOException {
+        UploadSession session = requireSession(sessionId);
+        session.lock.lock();
+        try {
+            if (session.totalSize >= 0 && session.received != session.totalSize) {
+                throw new UploadRejectedException(HttpStatus.CONFLICT,
+                        "Received " + session.received + " of " + session.totalSize + " bytes");
+            }
+            sessions.remove(sessionId);
+            try {
+                return publish(session.filename, resolveTarget(session.filename), session.partFile, session.received,
+                        HexFormat.of().formatHex(session.digest.digest()), session.expectedHash);
+            } finally {
+                Files.deleteIfExists(session.partFile);
+            }
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public void abortSession(String sessionId) throws IOException {
+        UploadSession session = sessions.remove(sessionId);
+        if (session != null) {
+            Files.deleteIfExists(session.partFile);
+            log.info("Aborted upload session {} for {}", sessionId, session.filename);
+        }
+    }
+
+    private StoredFile publish(String filename, Path target, Path tmp, long size, String contentHash, String expectedHash)
+            throws IOException {
+        if (expectedHash != null && !expectedHash.equalsIgnoreCase(contentHash)) {
+            throw new UploadRejectedException(HttpStatus.BAD_REQUEST, "Content hash does not match " + expectedHash);
+        }
+        Optional<DocumentRecord> duplicate = documentRegistry.findByHash(contentHash);
+        if (duplicate.isPresent()) {
+            throw new UploadRejectedException(HttpStatus.CONFLICT,
+                    "Same content already uploaded as " + duplicate.get().filename());
+        }
+        // rename(2) would silently replace a file published by a concurrent upload of the same name,
+        // a link is only created when the name is still free
+        try {
+            link(tmp, target);
+        } catch (FileAlreadyExistsException e) {
+            throw new UploadRejectedException(HttpStatus.CONFLICT, "A file named " + filename + " already exists");
+        }
+        long uploadTime = Files.getLastModifiedTime(target).toMillis();
+        documentRegistry.recordUpload(filename, size, contentHash, uploadTime);
+        log.info("Stored {} ({} bytes, sha256 {})", filename, size, contentHash);
+        return new StoredFile(filename, size, contentHash);
+    }
+
+    /**
+     * Publish {@code tmp} under {@code target}, failing if the target exists. The caller deletes {@code tmp}.
+     */
+    private static void link(Path tmp, Path target) throws IOException {
+        try {
+            Files.createLink(target, tmp);
+        } catch (UnsupportedOperationException e) {
+            // No hard links on this file system: claim the name with an empty file, then replace only that
+            Files.createFile(target);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private long copy(InputStream body, FileChannel out, MessageDigest digest, long limit) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(body);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long total = 0;
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            total += buffer.remaining();
+            if (total > limit || total > maxFileSize) {
+                throw new UploadRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, "Body is longer than declared");
+            }
+            digest.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Reserve in-flight budget proportional to the request size, waiting at most the admission timeout
+     */
+    private int admit(long contentLength) {
+        int megabytes = (int) Math.min(inFlightBudgetMb, Math.max(1, (contentLength + MEGABYTE - 1) / MEGABYTE));
+        try {
+            if (!inFlightMegabytes.tryAcquire(megabytes, admissionTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new UploadRejectedException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many uploads in progress, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadRejectedException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for upload capacity");
+        }
+        return megabytes;
+    }
+
+    private Path resolveTarget(String filename) {
+        if (filename == null || filename.isBlank()) {
+            throw new UploadRejectedException(HttpStatus.BAD_REQUEST, "A file name is required");
+        }
+        Path target = uploadDir.resolve(filename).normalize();
+        if (!uploadDir.equals(target.getParent()) || filename.startsWith(".")) {
+            throw new UploadRejectedException(HttpStatus.BAD_REQUEST, "Invalid file name " + filename);
+        }
+        if (Files.exists(target)) {
+            throw new UploadRejectedException(HttpStatus.CONFLICT, "A file named " + filename + " already exists");
+        }
+        return target;
+    }
+
+    private void rejectKnownHash(String expectedHash) {
+        if (expectedHash != null) {
+            documentRegistry.findByHash(expectedHash.toLowerCase()).ifPresent(duplicate -> {
+                throw new UploadRejectedException(HttpStatus.CONFLICT,
+                        "Same content already uploaded as " + duplicate.filename());
+            });
+        }
+    }
+
+    private void checkSize(long size) {
+        if (size < 0) {
+            throw new UploadRejectedException(HttpStatus.LENGTH_REQUIRED, "Content length is required");
+        }
+        if (size > maxFileSize) {
+            throw new UploadRejectedException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "File is larger than the limit of " + maxFileSize + " bytes");
+        }
+    }
+
+    private UploadSession requireSession(String sessionId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            throw new UploadRejectedException(HttpStatus.NOT_FOUND, "No upload session with id " + sessionId);
+        }
+        return session;
+    }
+
+    private void expireIdleSessions() {
+        Instant cutoff = Instant.now().minus(sessionTtl);
+        sessions.values().removeIf(session -> {
+            if (session.lastActivity.isBefore(cutoff)) {
+                try {
+                    Files.deleteIfExists(session.partFile);
+                } catch (IOException e) {
+                    log.warn("Could not delete expired upload {}: {}", session.partFile, e.getMessage());
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static MessageDigest cloneDigest(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be checkpointed", e);
+        }
+    }
+
+    public record StoredFile(String filename, long size, String contentHash) {}
+
+    /**
+     * A resumable upload in progress. The running digest lives in memory, so sessions do not survive a restart.
+     */
+    public static class UploadSession {
+
+        private final String id;
+        private final String filename;
+        private final long totalSize;
+        private final String expectedHash;
+        private final Path partFile;
+        private final ReentrantLock lock = new ReentrantLock();
+        private MessageDigest digest;
+        private volatile long received;
+        private volatile Instant lastActivity = Instant.now();
+
+        UploadSession(String id, String filename, long totalSize, String expectedHash, Path partFile, MessageDigest digest) {
+            this.id = id;
+            this.filename = filename;
+            this.totalSize = totalSize;
+            this.expectedHash = expectedHash;
+            this.partFile = partFile;
+            this.digest = digest;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        void touch() {
+            lastActivity = Instant.now();
+        }
+    }
+
+    /**
+     * An upload refused for a reason the client can act on, carrying the HTTP status to answer with
+     */
+    public static class UploadRejectedException extends RuntimeException {
+
+        private final HttpStatus status;
+
+        public UploadRejectedException(HttpStatus status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+    }
+}
@@ -20,8 +20,8 @@ public class EmailController {
     @Value("classpath:/prompts/email-prompt-template.st")
     private Resource emailPromptTemplate;
 
-    public EmailController(ChatClient.Builder builder) {
-        this.chatClient = builder
+    public EmailController(ChatGateway chatGateway) {
+        this.chatClient = ChatClient.builder(chatGateway.model("email", ChatGateway.Priority.BATCH))
                 .defaultSystem("You are a helpful AI Assistant that generates a proper email subject and body.")
                 .defaultTools("sendEmailFunction")
                 .build();
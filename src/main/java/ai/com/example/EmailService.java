@@ -2,42 +2,37 @@ package ai.com.example;
 
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
 import java.util.function.Function;
 
+/**
+ * Hands mail to the {@link MailQueue} and answers right away with the queued message id; delivery
+ * happens in the background and its progress is visible at {@code /api/mail/{id}}.
+ */
 @Slf4j
 @Service
 public class EmailService implements Function<EmailService.EmailRequest, EmailService.EmailResponse> {
 
-    private final JavaMailSender mailSender;
+    private final MailQueue mailQueue;
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(MailQueue mailQueue) {
+        this.mailQueue = mailQueue;
     }
 
     @Override
     public EmailResponse apply(EmailRequest request) {
-        log.info("Sending email to: {}", request.to());
+        log.info("Queueing email to: {}", request.to());
 
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setTo(request.to());
-            message.setSubject(request.subject());
-            message.setText(request.body());
-            mailSender.send(message);
-
-            log.info("Email sent successfully to: {}", request.to());
-            return new EmailResponse("Success", "Email sent successfully to " + request.to());
+            OutboundMail mail = mailQueue.enqueue(request.to(), request.subject(), request.body());
+            return new EmailResponse("Queued", "Email to " + request.to() + " queued for delivery with id " + mail.id(), mail.id());
         } catch (Exception e) {
-            log.error("Failed to send email: {}", e.getMessage());
-            return new EmailResponse("Error", "Failed to send email: " + e.getMessage());
+            log.error("Failed to queue email: {}", e.getMessage());
+            return new EmailResponse("Error", "Failed to queue email: " + e.getMessage(), null);
         }
     }
 
     public record EmailRequest(String to, String subject, String body) {}
-    public record EmailResponse(String status, String message) {}
+    public record EmailResponse(String status, String message, String messageId) {}
 }
-
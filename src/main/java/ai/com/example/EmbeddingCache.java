@@ -0,0 +1,218 @@
+package ai.com.example;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent, size-bounded cache of embedding vectors keyed by a SHA-256 of the model name and the text.
+ * <p>
+ * Entries live in an access-ordered map so the least recently used vector is evicted first.
+ * New entries are appended to a log file; the log is rewritten in LRU order when it holds
+ * twice as many records as the cache and when the cache is closed, so recency survives restarts.
+ * <p>
+ * The vectors stay on the heap, about {@code max-entries * dimensions * 4} bytes (200 MB for 50,000
+ * 1024-dimensional vectors). A mapped file would need a slot allocator and in-place eviction for the LRU;
+ * a heap map keeps lookups and eviction trivial, and the bound is set with {@code embedding.cache.max-entries}.
+ * <p>
+ * Access is guarded by a lock rather than {@code synchronized}: appends and compaction do file I/O, and
+ * virtual threads blocked on a contended monitor would pin their carrier threads meanwhile.
+ */
+@Slf4j
+public class EmbeddingCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x454d4243; // "EMBC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int KEY_BYTES = 32;
+
+    private final Path file;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, float[]> entries;
+    private FileChannel appendChannel;
+    private long appendedRecords;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public EmbeddingCache(Path file, int maxEntries) throws IOException {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, float[]> eldest) {
+                return size() > EmbeddingCache.this.maxEntries;
+            }
+        };
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        if (Files.exists(file)) {
+            load();
+        }
+        compact();
+        log.info("Embedding cache opened at {} with {} entries", file, entries.size());
+    }
+
+    /**
+     * Cache key for a text embedded with the given model
+     */
+    public static Key key(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return Key.of(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Cached vector for the key or {@code null}. Returned arrays are shared and must not be modified.
+     */
+    public float[] get(Key key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(Key key, float[] vector) {
+        lock.lock();
+        try {
+            if (entries.put(key, vector) != null) {
+                return;
+            }
+            appendChannel.write(encode(key, vector));
+            appendedRecords++;
+            if (appendedRecords > 2L * maxEntries) {
+                compact();
+            }
+        } catch (IOException e) {
+            // The in-memory entry is still usable, it just won't survive a restart
+            log.warn("Could not persist embedding cache entry: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            compact();
+            appendChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                log.warn("Ignoring embedding cache {} with unknown format", file);
+                return;
+            }
+            byte[] keyBytes = new byte[KEY_BYTES];
+            long remaining = Files.size(file) - HEADER_BYTES;
+            while (true) {
+                try {
+                    data.readFully(keyBytes);
+                    int dimensions = data.readInt();
+                    remaining -= KEY_BYTES + Integer.BYTES;
+                    // Models differ in size, so only a length that cannot be right marks a torn or corrupt record
+                    if (dimensions <= 0 || (long) dimensions * Float.BYTES > remaining) {
+                        log.warn("Ignoring the rest of embedding cache {} after a corrupt record", file);
+                        break;
+                    }
+                    remaining -= (long) dimensions * Float.BYTES;
+                    byte[] vectorBytes = new byte[dimensions * Float.BYTES];
+                    data.readFully(vectorBytes);
+                    float[] vector = new float[dimensions];
+                    ByteBuffer.wrap(vectorBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+                    // Later records are more recent, re-inserting keeps the LRU order of the log
+                    entries.put(Key.of(keyBytes), vector);
+                } catch (EOFException e) {
+                    // End of the log, or a record cut short by a crash, which the compaction on opening drops
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn("Ignoring truncated embedding cache {}", file);
+        }
+    }
+
+    /**
+     * Rewrite the log with exactly the live entries, least recently used first
+     */
+    private void compact() throws IOException {
+        if (appendChannel != null) {
+            appendChannel.close();
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+            out.write(header);
+            for (Map.Entry<Key, float[]> entry : entries.entrySet()) {
+                out.write(encode(entry.getKey(), entry.getValue()));
+            }
+            out.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        appendChannel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        appendedRecords = entries.size();
+    }
+
+    private static ByteBuffer encode(Key key, float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(KEY_BYTES + Integer.BYTES + vector.length * Float.BYTES);
+        buffer.putLong(key.a()).putLong(key.b()).putLong(key.c()).putLong(key.d());
+        buffer.putInt(vector.length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * 256-bit content hash, kept as four longs to avoid an extra array per entry
+     */
+    public record Key(long a, long b, long c, long d) {
+
+        static Key of(byte[] hash) {
+            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            return new Key(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+    }
+}
@@ -1,87 +1,133 @@
 package ai.com.example;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RestController
 public class FaqController {
     private final ChatClient chatClient;
+    private final Resource ragPromptTemplate;
+    private final RagRetriever ragRetriever;
+    private final SemanticCache semanticCache;
+    private final String faqFilter;
+    private final String askFilter;
+    private final Timer generateLatency;
 
-    @Value("classpath:/prompts/rag-prompt-template.st")
-    private Resource ragPromptTemplate;
-
-    private final VectorStore vectorStore;
-
-    public FaqController(ChatClient.Builder builder, VectorStore vectorStore) {
-        this.vectorStore = vectorStore;
-        this.chatClient = builder
-                .defaultAdvisors(new QuestionAnswerAdvisor(vectorStore,SearchRequest.builder().build()))
-                .build();
+    // Retrieval happens once per request in RagRetriever, so the client carries no QuestionAnswerAdvisor
+    public FaqController(ChatGateway chatGateway,
+                         RagRetriever ragRetriever,
+                         SemanticCache semanticCache,
+                         MeterRegistry meterRegistry,
+                         @Value("classpath:/prompts/rag-prompt-template.st") Resource ragPromptTemplate,
+                         @Value("${rag.faq.filter-expression:}") String faqFilter,
+                         @Value("${rag.ask.filter-expression:source == 'uploaded'}") String askFilter) {
+        this.chatClient = ChatClient.builder(chatGateway.model("faq", ChatGateway.Priority.INTERACTIVE)).build();
+        this.ragPromptTemplate = ragPromptTemplate;
+        this.ragRetriever = ragRetriever;
+        this.semanticCache = semanticCache;
+        this.faqFilter = faqFilter;
+        this.askFilter = askFilter;
+        this.generateLatency = RagRetriever.phaseTimer("generate", meterRegistry);
     }
 
     @GetMapping("/faq")
     public String faq(@RequestParam(value = "message", defaultValue = "How many athletes compete in the Olympic Games Paris 2024") String message) {
-        List<Document> similarDocuments = vectorStore.similaritySearch(
-                SearchRequest.builder()
-                        .query(message)
-                        .topK(2)
-                        .build()
-        );
-        List<String> contentList = similarDocuments.stream().map(Document::getText).toList();
-        //create a prompt template so that LLM/bot answer accordingly
-        PromptTemplate promptTemplate = new PromptTemplate (ragPromptTemplate);
-        Map<String,Object> promptParameters= new HashMap();
-        promptParameters.put("input", message);
-        promptParameters.put("documents",  String.join("\n", contentList));
-        Prompt prompt= promptTemplate.create(promptParameters);
-        return chatClient.prompt(prompt)
-                .user(message)
-                .call()
-                .content();
+        return answer("faq", message, faqFilter);
     }
 
-
     @GetMapping("/ask")
     public String ask(@RequestParam(value = "message", defaultValue = "How many athletes compete in the Olympic Games Paris 2024") String message) {
-        // Perform similarity search with a metadata filter for "uploaded" documents
-        //String filterExpression = String.format("source == '%s'", source);
-        SearchRequest searchRequest = SearchRequest.builder()
-                .query(message)
-                .topK(2)
-                .filterExpression("source == 'uploaded'")
-                .build();
+        // Only user-uploaded files are searched
+        return answer("ask", message, askFilter);
+    }
+
+    @GetMapping(value = "/faq/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> faqStream(@RequestParam(value = "message", defaultValue = "How many athletes compete in the Olympic Games Paris 2024") String message) {
+        return streamAnswer(message, faqFilter);
+    }
 
-        // Filter to include only user-uploaded files
-        List<Document> similarDocuments = vectorStore.similaritySearch(searchRequest);
-        List<String> contentList = similarDocuments.stream().map(Document::getText).toList();
+    @GetMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> askStream(@RequestParam(value = "message", defaultValue = "How many athletes compete in the Olympic Games Paris 2024") String message) {
+        return streamAnswer(message, askFilter);
+    }
+
+    private String answer(String endpoint, String message, String filterExpression) {
+        // One embedding serves both the answer cache and the search
+        float[] queryEmbedding = ragRetriever.embed(message);
+        return semanticCache.getOrGenerate(endpoint, message, queryEmbedding, () -> {
+            List<Document> similarDocuments = ragRetriever.search(message, queryEmbedding, filterExpression);
+            long start = System.nanoTime();
+            try {
+                return chatClient.prompt(ragPrompt(message, similarDocuments))
+                        .call()
+                        .content();
+            } finally {
+                generateLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
 
-        // Prepare the prompt
+    /**
+     * Retrieve off the request thread, send the source filenames as a "sources" event and then
+     * every generated token as a "token" event as soon as the model produces it
+     */
+    private Flux<ServerSentEvent<Object>> streamAnswer(String message, String filterExpression) {
+        return Flux.defer(() -> {
+                    List<Document> similarDocuments = ragRetriever.retrieve(message, filterExpression);
+                    ServerSentEvent<Object> sources = ServerSentEvent.<Object>builder()
+                            .event("sources")
+                            .data(sourceFilenames(similarDocuments))
+                            .build();
+                    long start = System.nanoTime();
+                    Flux<ServerSentEvent<Object>> tokens = chatClient.prompt(ragPrompt(message, similarDocuments))
+                            .stream()
+                            .content()
+                            .map(token -> ServerSentEvent.<Object>builder().event("token").data(token).build())
+                            .doOnComplete(() -> generateLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+                    return Flux.concat(Flux.just(sources), tokens);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("Streaming answer for '{}' failed: {}", message, e.getMessage(), e);
+                    return Flux.just(ServerSentEvent.<Object>builder().event("error").data(e.getMessage()).build());
+                });
+    }
+
+    private Prompt ragPrompt(String message, List<Document> documents) {
         PromptTemplate promptTemplate = new PromptTemplate(ragPromptTemplate);
         Map<String, Object> promptParameters = new HashMap<>();
         promptParameters.put("input", message);
-        promptParameters.put("documents", String.join("\n", contentList));
-
-        Prompt prompt = promptTemplate.create(promptParameters);
+        promptParameters.put("documents", String.join("\n", documents.stream().map(Document::getText).toList()));
+        return promptTemplate.create(promptParameters);
+    }
 
-        return chatClient.prompt()
-                .user(message)
-                .call()
-                .content();
+    private static List<String> sourceFilenames(List<Document> documents) {
+        return documents.stream()
+                .map(document -> document.getMetadata().get("filename"))
+                .filter(Objects::nonNull)
+                .map(Object::toString)
+                .distinct()
+                .toList();
     }
 }
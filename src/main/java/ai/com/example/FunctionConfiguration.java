@@ -19,7 +19,7 @@ public class FunctionConfiguration {
     }
 
     @Bean
-    @Description("Send an email using the email service.")
+    @Description("Queue an email for delivery; the response carries the queued message id.")
     public Function<EmailService.EmailRequest, EmailService.EmailResponse> sendEmailFunction() {
         return emailService;
     }
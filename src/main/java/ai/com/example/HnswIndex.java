@@ -0,0 +1,310 @@
+package ai.com.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph over vectors addressed by node number (Malkov and Yashunin).
+ * <p>
+ * Only the graph is held here, the vectors are read through {@link Vectors} so they can live off-heap.
+ * Similarity is the dot product, so vectors are expected to be normalized. The index is not thread-safe:
+ * searches may run concurrently with each other, but inserts need exclusive access.
+ */
+final class HnswIndex {
+
+    /**
+     * Access to the vector of every node in the index
+     */
+    interface Vectors {
+
+        float[] vector(int node);
+
+        float similarity(int node, float[] query);
+    }
+
+    /**
+     * Similarity of every node to one fixed query
+     */
+    interface Scorer {
+
+        float similarity(int node);
+    }
+
+    record Neighbor(int node, float similarity) {}
+
+    private static final int MAGIC = 0x484e5347; // "HNSG"
+    private static final int VERSION = 1;
+    private static final Comparator<Neighbor> BY_SIMILARITY = Comparator.comparingDouble(Neighbor::similarity);
+
+    private final Vectors vectors;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+
+    // links.get(node)[level] holds the neighbor count followed by the neighbor node numbers
+    private final List<int[][]> links = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(Vectors vectors, int m, int efConstruction, long seed) {
+        this.vectors = vectors;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    int size() {
+        return links.size();
+    }
+
+    /**
+     * Insert the next node, whose vector must already be readable through {@link Vectors}
+     */
+    int insert(float[] vector) {
+        int node = links.size();
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[capacity(l) + 1];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        Scorer scorer = other -> vectors.similarity(other, vector);
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(scorer, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Neighbor> candidates = searchLayer(scorer, current, efConstruction, l, any -> true);
+            List<Neighbor> selected = selectNeighbors(candidates, capacity(l));
+            int[] ownLinks = nodeLinks[l];
+            for (Neighbor neighbor : selected) {
+                ownLinks[++ownLinks[0]] = neighbor.node();
+                connect(neighbor.node(), node, neighbor.similarity(), l);
+            }
+            current = candidates.get(0).node();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * The {@code k} most similar accepted nodes, most similar first. Rejected nodes are still traversed,
+     * so a selective filter widens the search instead of cutting it off.
+     */
+    List<Neighbor> search(float[] query, int k, int ef, IntPredicate accept) {
+        return search(node -> vectors.similarity(node, query), k, ef, accept);
+    }
+
+    /**
+     * Search with a custom scorer, for example one over quantized vectors
+     */
+    List<Neighbor> search(Scorer scorer, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(scorer, current, l);
+        }
+        List<Neighbor> results = searchLayer(scorer, current, Math.max(ef, k), 0, accept);
+        return results.subList(0, Math.min(k, results.size()));
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(m);
+        out.writeInt(links.size());
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int[][] nodeLinks : links) {
+            out.writeInt(nodeLinks.length);
+            for (int[] levelLinks : nodeLinks) {
+                out.writeInt(levelLinks[0]);
+                for (int i = 1; i <= levelLinks[0]; i++) {
+                    out.writeInt(levelLinks[i]);
+                }
+            }
+        }
+    }
+
+    static HnswIndex read(DataInputStream in, Vectors vectors, int efConstruction, long seed) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not an HNSW graph");
+        }
+        HnswIndex index = new HnswIndex(vectors, in.readInt(), efConstruction, seed);
+        int nodes = in.readInt();
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        for (int node = 0; node < nodes; node++) {
+            int[][] nodeLinks = new int[in.readInt()][];
+            for (int l = 0; l < nodeLinks.length; l++) {
+                nodeLinks[l] = new int[index.capacity(l) + 1];
+                nodeLinks[l][0] = in.readInt();
+                for (int i = 1; i <= nodeLinks[l][0]; i++) {
+                    nodeLinks[l][i] = in.readInt();
+                }
+            }
+            index.links.add(nodeLinks);
+        }
+        return index;
+    }
+
+    private int capacity(int level) {
+        return level == 0 ? m0 : m;
+    }
+
+    private int greedyClosest(Scorer scorer, int entry, int level) {
+        int current = entry;
+        float best = scorer.similarity(current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = links.get(current)[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float similarity = scorer.similarity(neighbors[i]);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer, returning up to {@code ef} accepted nodes, most similar first
+     */
+    private List<Neighbor> searchLayer(Scorer scorer, int entry, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(BY_SIMILARITY);
+
+        Neighbor start = new Neighbor(entry, scorer.similarity(entry));
+        visited.set(entry);
+        candidates.add(start);
+        if (accept.test(entry)) {
+            results.add(start);
+        }
+
+        while (!candidates.isEmpty()) {
+            Neighbor candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int[] neighbors = links.get(candidate.node())[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int node = neighbors[i];
+                if (visited.get(node)) {
+                    continue;
+                }
+                visited.set(node);
+                float similarity = scorer.similarity(node);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Neighbor neighbor = new Neighbor(node, similarity);
+                    candidates.add(neighbor);
+                    if (accept.test(node)) {
+                        results.add(neighbor);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Neighbor> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY.reversed());
+        return sorted;
+    }
+
+    /**
+     * Neighbor selection heuristic: skip candidates that are closer to an already selected neighbor than to
+     * the base node, so links spread out in different directions. Skipped candidates fill any remaining slots.
+     */
+    private List<Neighbor> selectNeighbors(List<Neighbor> candidates, int max) {
+        List<Neighbor> selected = new ArrayList<>(max);
+        List<float[]> selectedVectors = new ArrayList<>(max);
+        List<Neighbor> skipped = new ArrayList<>();
+        for (Neighbor candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] candidateVector = vectors.vector(candidate.node());
+            boolean diverse = true;
+            for (float[] selectedVector : selectedVectors) {
+                if (dot(candidateVector, selectedVector) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+                selectedVectors.add(candidateVector);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Add a back link from {@code node} to {@code newNeighbor}, re-selecting its neighbors when it is full
+     */
+    private void connect(int node, int newNeighbor, float similarity, int level) {
+        int[] nodeLinks = links.get(node)[level];
+        if (nodeLinks[0] < capacity(level)) {
+            nodeLinks[++nodeLinks[0]] = newNeighbor;
+            return;
+        }
+
+        float[] nodeVector = vectors.vector(node);
+        List<Neighbor> candidates = new ArrayList<>(nodeLinks[0] + 1);
+        candidates.add(new Neighbor(newNeighbor, similarity));
+        for (int i = 1; i <= nodeLinks[0]; i++) {
+            candidates.add(new Neighbor(nodeLinks[i], vectors.similarity(nodeLinks[i], nodeVector)));
+        }
+        candidates.sort(BY_SIMILARITY.reversed());
+
+        List<Neighbor> selected = selectNeighbors(candidates, capacity(level));
+        nodeLinks[0] = selected.size();
+        for (int i = 0; i < selected.size(); i++) {
+            nodeLinks[i + 1] = selected.get(i).node();
+        }
+    }
+
+    static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
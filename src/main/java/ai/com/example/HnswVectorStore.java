@@ -0,0 +1,656 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Embedded vector store: normalized float vectors in a memory-mapped file, an HNSW graph for approximate
+ * nearest neighbor search, and chunk text and metadata on the heap.
+ * <p>
+ * Searches share a read lock, writes take the write lock. Deleted and replaced chunks leave a tombstone
+ * in the graph so it stays navigable. The graph and documents are written to disk in the background
+ * when they changed, and on close.
+ * <p>
+ * Tombstones keep their vector, graph node and document slot, so re-indexing files would grow all three
+ * without bound. Once tombstones exceed {@code compactionThreshold} of the nodes, the store is rebuilt in
+ * the background from the live chunks only. The rebuild works on a snapshot of the live vectors, so searches
+ * and writes keep running; they only wait while the changes made meanwhile are replayed and the new files,
+ * written next to the old ones, are swapped in behind a marker file. A crash during the swap is completed on
+ * the next start.
+ * <p>
+ * With quantization enabled the graph is still built from the full vectors, but searches traverse it with
+ * compact int8 or binary codes held on the heap and re-rank the best {@code topK * rerankFactor} candidates
+ * with exact similarities read from the mapped file. The codes are rebuilt from that file on startup.
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore, VectorSearch, ChunkStore, AutoCloseable {
+
+    private static final TypeReference<List<StoredDocument>> DOCUMENT_LIST = new TypeReference<>() {};
+    private static final long SEED = 42;
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final Path vectorFile;
+    private final Path graphFile;
+    private final Path documentFile;
+    private final Path compactionMarker;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double compactionThreshold;
+    private final QuantizedVectors.Mode quantization;
+    private final int rerankFactor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<StoredDocument> documents = new ArrayList<>();
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private MappedVectorFile vectors;
+    private HnswIndex index;
+    private QuantizedVectors quantized;
+    private volatile boolean dirty;
+    private boolean closed;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, ObjectMapper objectMapper, Path directory,
+                           int m, int efConstruction, int efSearch, Duration flushInterval,
+                           QuantizedVectors.Mode quantization, int rerankFactor, double compactionThreshold) throws IOException {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.vectorFile = directory.resolve("vectors.f32");
+        this.graphFile = directory.resolve("graph.bin");
+        this.documentFile = directory.resolve("documents.json");
+        this.compactionMarker = directory.resolve("compaction.done");
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.compactionThreshold = compactionThreshold;
+        this.quantization = quantization;
+        this.rerankFactor = rerankFactor > 0 ? rerankFactor : quantization.defaultRerankFactor;
+
+        Files.createDirectories(directory);
+        this.index = new HnswIndex(vectorAccess(), m, efConstruction, SEED);
+        load();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hnsw-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushIfDirty, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(List<Document> documentsToAdd) {
+        if (documentsToAdd.isEmpty()) {
+            return;
+        }
+        // Embed before taking the lock, searches keep running meanwhile
+        List<float[]> embeddings = embeddingModel.embed(documentsToAdd, EmbeddingOptionsBuilder.builder().build(),
+                new TokenCountBatchingStrategy());
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documentsToAdd.size(); i++) {
+                Document document = documentsToAdd.get(i);
+                float[] vector = normalize(embeddings.get(i));
+                if (vectors == null) {
+                    vectors = MappedVectorFile.open(vectorFile, vector.length);
+                    quantized = quantizedVectors(vector.length);
+                }
+                Integer replaced = nodesById.remove(document.getId());
+                if (replaced != null) {
+                    documents.set(replaced, null);
+                }
+                int node = vectors.append(vector);
+                index.insert(vector);
+                if (quantized != null) {
+                    quantized.add(vector);
+                }
+                documents.add(new StoredDocument(document.getId(), document.getText(), document.getMetadata()));
+                nodesById.put(document.getId(), node);
+            }
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append vectors to " + vectorFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer node = nodesById.remove(id);
+                if (node != null) {
+                    documents.set(node, null);
+                    dirty = true;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = MetadataFilters.of(filterExpression);
+        delete(matchingIds(filter));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return similaritySearch(request, embeddingModel.embed(request.getQuery()));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding) {
+        float[] query = normalize(queryEmbedding);
+        Predicate<Map<String, Object>> filter = MetadataFilters.of(request.getFilterExpression());
+
+        lock.readLock().lock();
+        try {
+            if (vectors == null) {
+                return List.of();
+            }
+            if (query.length != vectors.dimensions()) {
+                throw new IllegalArgumentException("Query has " + query.length + " dimensions but the store holds "
+                        + vectors.dimensions() + "-dimensional vectors");
+            }
+            IntPredicate accept = node -> {
+                StoredDocument document = documents.get(node);
+                return document != null && filter.test(document.metadata());
+            };
+            List<HnswIndex.Neighbor> neighbors = quantized != null
+                    ? rerank(query, request.getTopK(), accept)
+                    : index.search(query, request.getTopK(), efSearch, accept);
+
+            List<Document> results = new ArrayList<>(neighbors.size());
+            for (HnswIndex.Neighbor neighbor : neighbors) {
+                if (neighbor.similarity() < request.getSimilarityThreshold()) {
+                    continue;
+                }
+                StoredDocument document = documents.get(neighbor.node());
+                Map<String, Object> metadata = new LinkedHashMap<>(document.metadata());
+                metadata.put("distance", 1 - neighbor.similarity());
+                results.add(Document.builder()
+                        .id(document.id())
+                        .text(document.text())
+                        .metadata(metadata)
+                        .score((double) neighbor.similarity())
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Traverse the graph with the quantized codes, then order the widened candidate set by exact similarity
+     */
+    private List<HnswIndex.Neighbor> rerank(float[] query, int topK, IntPredicate accept) {
+        int candidates = topK * rerankFactor;
+        return index.search(quantized.scorer(query), candidates, Math.max(efSearch, candidates), accept).stream()
+                .map(candidate -> new HnswIndex.Neighbor(candidate.node(), vectors.dot(candidate.node(), query)))
+                .sorted(Comparator.comparingDouble(HnswIndex.Neighbor::similarity).reversed())
+                .limit(topK)
+                .toList();
+    }
+
+    @Override
+    public List<String> findChunkIds(String filename) {
+        return matchingIds(metadata -> filename.equals(metadata.get("filename")));
+    }
+
+    @Override
+    public Map<String, List<String>> findChunkIdsByFilename() {
+        Map<String, List<String>> idsByFilename = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (StoredDocument document : documents) {
+                Object filename = document != null ? document.metadata().get("filename") : null;
+                if (filename != null) {
+                    idsByFilename.computeIfAbsent(filename.toString(), name -> new ArrayList<>()).add(document.id());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return idsByFilename;
+    }
+
+    @Override
+    public List<Document> findChunks(String filename) {
+        lock.readLock().lock();
+        try {
+            return documents.stream()
+                    .filter(Objects::nonNull)
+                    .filter(document -> filename.equals(document.metadata().get("filename")))
+                    .map(document -> new Document(document.id(), document.text(), document.metadata()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deleted or replaced chunks that still occupy a node, until the next compaction
+     */
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return documents.size() - nodesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether searches traverse the graph with the quantized codes
+     */
+    boolean searchesQuantized() {
+        lock.readLock().lock();
+        try {
+            return quantized != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the vector file, graph and document list from the live chunks only, dropping every tombstone.
+     * <p>
+     * The live vectors are copied under the read lock; vectors are append-only, so nodes below the snapshot
+     * size never change. The new graph and files are built without a lock. The write lock is taken only to
+     * replay the chunks added or tombstoned since the snapshot and to swap the new files in.
+     */
+    public void compact() throws IOException {
+        compactionLock.lock();
+        try {
+            compactLive();
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void compactLive() throws IOException {
+        long start = System.nanoTime();
+        Path nextVectorFile = compactFile(vectorFile);
+        MappedVectorFile nextVectors = null;
+        List<StoredDocument> nextDocuments;
+        List<Integer> previousNodes;
+        int snapshotSize;
+        lock.readLock().lock();
+        try {
+            if (closed || vectors == null || documents.size() == nodesById.size()) {
+                return;
+            }
+            snapshotSize = documents.size();
+            nextDocuments = new ArrayList<>(nodesById.size());
+            previousNodes = new ArrayList<>(nodesById.size());
+            Files.deleteIfExists(nextVectorFile);
+            nextVectors = MappedVectorFile.open(nextVectorFile, vectors.dimensions());
+            for (int node = 0; node < snapshotSize; node++) {
+                StoredDocument document = documents.get(node);
+                if (document != null) {
+                    nextVectors.append(vectors.get(node));
+                    nextDocuments.add(document);
+                    previousNodes.add(node);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            abandonCompaction(nextVectors);
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // The expensive part: searches and writes carry on against the current files meanwhile
+        HnswIndex nextIndex = new HnswIndex(vectorAccess(nextVectors), m, efConstruction, SEED);
+        QuantizedVectors nextQuantized = quantizedVectors(nextVectors.dimensions());
+        try {
+            for (int node = 0; node < nextVectors.size(); node++) {
+                float[] vector = nextVectors.get(node);
+                nextIndex.insert(vector);
+                if (nextQuantized != null) {
+                    nextQuantized.add(vector);
+                }
+            }
+            nextVectors.force();
+            writeDocuments(compactFile(documentFile), nextDocuments);
+            writeGraph(compactFile(graphFile), nextIndex);
+        } catch (IOException | RuntimeException e) {
+            abandonCompaction(nextVectors);
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                abandonCompaction(nextVectors);
+                return;
+            }
+            // Chunks deleted or replaced since the snapshot become tombstones of the new store
+            Map<String, Integer> nextNodesById = new HashMap<>();
+            int replayed = 0;
+            for (int node = 0; node < nextDocuments.size(); node++) {
+                if (documents.get(previousNodes.get(node)) == null) {
+                    nextDocuments.set(node, null);
+                    replayed++;
+                } else {
+                    nextNodesById.put(nextDocuments.get(node).id(), node);
+                }
+            }
+            // Chunks added since the snapshot are appended after the copied ones
+            for (int node = snapshotSize; node < documents.size(); node++) {
+                StoredDocument document = documents.get(node);
+                if (document == null) {
+                    continue;
+                }
+                float[] vector = vectors.get(node);
+                int nextNode = nextVectors.append(vector);
+                nextIndex.insert(vector);
+                if (nextQuantized != null) {
+                    nextQuantized.add(vector);
+                }
+                nextDocuments.add(document);
+                nextNodesById.put(document.id(), nextNode);
+                replayed++;
+            }
+            int dropped = documents.size() - nodesById.size() - (nextDocuments.size() - nextNodesById.size());
+
+            // From here on the new files win, a crash before they are all in place is completed by load()
+            Files.createFile(compactionMarker);
+            vectors.close();
+            vectors = nextVectors;
+            index = nextIndex;
+            quantized = nextQuantized;
+            documents.clear();
+            documents.addAll(nextDocuments);
+            nodesById.clear();
+            nodesById.putAll(nextNodesById);
+            installCompaction();
+            // The files hold the snapshot, the replayed changes go out with the next flush
+            dirty = replayed > 0;
+            log.info("Compacted HNSW vector store: dropped {} tombstones, {} chunks remain, replayed {} changes, took {} ms",
+                    dropped, nodesById.size(), replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            if (vectors != nextVectors) {
+                abandonCompaction(nextVectors);
+            }
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void abandonCompaction(MappedVectorFile nextVectors) throws IOException {
+        if (nextVectors != null) {
+            nextVectors.close();
+        }
+        deleteCompactionFiles();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            flush();
+            if (vectors != null) {
+                vectors.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<String> matchingIds(Predicate<Map<String, Object>> filter) {
+        lock.readLock().lock();
+        try {
+            return documents.stream()
+                    .filter(Objects::nonNull)
+                    .filter(document -> filter.test(document.metadata()))
+                    .map(StoredDocument::id)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (compactionThreshold <= 0 || flusher == null) {
+            return;
+        }
+        if (compactionDue()) {
+            // On the flush thread, so compactions never overlap each other or a flush
+            flusher.execute(() -> {
+                try {
+                    if (compactionDue()) {
+                        compact();
+                    }
+                } catch (Exception e) {
+                    log.error("Could not compact HNSW vector store: {}", e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    private boolean compactionDue() {
+        lock.readLock().lock();
+        try {
+            int tombstones = documents.size() - nodesById.size();
+            return tombstones > 0 && tombstones >= compactionThreshold * documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void flushIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        // A read lock is enough, it keeps writers out while searches continue
+        lock.readLock().lock();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Could not write HNSW vector store: {}", e.getMessage(), e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write vectors first and the graph last, so a crash in between leaves a graph that never points past
+     * the vectors on disk
+     */
+    private void flush() throws IOException {
+        dirty = false;
+        if (vectors == null) {
+            return;
+        }
+        vectors.force();
+
+        Path tmp = documentFile.resolveSibling(documentFile.getFileName() + ".tmp");
+        writeDocuments(tmp, documents);
+        Files.move(tmp, documentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        tmp = graphFile.resolveSibling(graphFile.getFileName() + ".tmp");
+        writeGraph(tmp, index);
+        Files.move(tmp, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Wrote HNSW vector store with {} nodes", index.size());
+    }
+
+    private void writeDocuments(Path file, List<StoredDocument> documents) throws IOException {
+        objectMapper.writeValue(file.toFile(), documents);
+    }
+
+    private static void writeGraph(Path file, HnswIndex index) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            index.write(out);
+        }
+    }
+
+    private static Path compactFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".compact");
+    }
+
+    /**
+     * Move the compacted files over the live ones and drop the marker. Safe to repeat after a crash part way.
+     */
+    private void installCompaction() throws IOException {
+        for (Path file : List.of(vectorFile, documentFile, graphFile)) {
+            if (Files.exists(compactFile(file))) {
+                Files.move(compactFile(file), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.deleteIfExists(compactionMarker);
+    }
+
+    private void deleteCompactionFiles() throws IOException {
+        for (Path file : List.of(vectorFile, documentFile, graphFile)) {
+            Files.deleteIfExists(compactFile(file));
+        }
+    }
+
+    private void load() throws IOException {
+        if (Files.exists(compactionMarker)) {
+            log.info("Completing an interrupted compaction of {}", vectorFile.getParent());
+            installCompaction();
+        } else {
+            deleteCompactionFiles();
+        }
+        vectors = MappedVectorFile.open(vectorFile, 0);
+        if (vectors == null || !Files.exists(graphFile)) {
+            if (vectors != null) {
+                // Vectors without a graph were never flushed, start over
+                vectors.truncate(0);
+                quantized = quantizedVectors(vectors.dimensions());
+            }
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile), 1 << 16))) {
+            index = HnswIndex.read(in, vectorAccess(), efConstruction, SEED);
+        }
+        if (vectors.size() < index.size()) {
+            throw new IOException("Vector file " + vectorFile + " holds " + vectors.size()
+                    + " vectors but the graph has " + index.size() + " nodes");
+        }
+        // Vectors appended after the last flush are not in the graph
+        vectors.truncate(index.size());
+        quantized = quantizedVectors(vectors.dimensions());
+        for (int node = 0; quantized != null && node < index.size(); node++) {
+            quantized.add(vectors.get(node));
+        }
+
+        List<StoredDocument> stored = Files.exists(documentFile)
+                ? objectMapper.readValue(documentFile.toFile(), DOCUMENT_LIST)
+                : List.of();
+        // The document list and graph come from the same flush unless it was interrupted between them
+        for (int node = 0; node < index.size(); node++) {
+            StoredDocument document = node < stored.size() ? stored.get(node) : null;
+            documents.add(document);
+            if (document != null) {
+                nodesById.put(document.id(), node);
+            }
+        }
+        log.info("HNSW vector store loaded with {} chunks ({} tombstones)", nodesById.size(), index.size() - nodesById.size());
+        if (quantized != null) {
+            log.info("Searching with {} quantized vectors using {} KB of heap, re-ranking {}x candidates",
+                    quantized.mode(), quantized.bytes() / 1024, rerankFactor);
+        }
+    }
+
+    private QuantizedVectors quantizedVectors(int dimensions) {
+        return quantization == QuantizedVectors.Mode.NONE ? null : new QuantizedVectors(quantization, dimensions);
+    }
+
+    /**
+     * Vector access for a graph built from another file than the current one
+     */
+    private static HnswIndex.Vectors vectorAccess(MappedVectorFile file) {
+        return new HnswIndex.Vectors() {
+            @Override
+            public float[] vector(int node) {
+                return file.get(node);
+            }
+
+            @Override
+            public float similarity(int node, float[] query) {
+                return file.dot(node, query);
+            }
+        };
+    }
+
+    private HnswIndex.Vectors vectorAccess() {
+        return new HnswIndex.Vectors() {
+            @Override
+            public float[] vector(int node) {
+                return vectors.get(node);
+            }
+
+            @Override
+            public float similarity(int node, float[] query) {
+                return vectors.dot(node, query);
+            }
+        };
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length && norm > 0; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    record StoredDocument(String id, String text, Map<String, Object> metadata) {}
+}
@@ -0,0 +1,189 @@
+package ai.com.example;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of one asynchronous ingestion request and the progress of every file in it
+ */
+public class IngestionJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, PARTIAL, FAILED }
+
+    public enum Stage { QUEUED, PARSING, SPLITTING, STORING, DONE, FAILED }
+
+    private final String id;
+    private final IngestionService.IndexMode mode;
+    private final Instant submittedAt = Instant.now();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Status status = Status.QUEUED;
+
+    // Keys are fixed at construction, only the progress values change afterwards
+    private final Map<String, FileProgress> files = new LinkedHashMap<>();
+
+    public IngestionJob(String id, Collection<String> filenames, IngestionService.IndexMode mode) {
+        this.id = id;
+        this.mode = mode;
+        for (String filename : filenames) {
+            files.put(filename, new FileProgress(filename));
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public IngestionService.IndexMode getMode() {
+        return mode;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public List<String> getFilenames() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    public FileProgress file(String filename) {
+        return files.get(filename);
+    }
+
+    void start() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void finish() {
+        long done = files.values().stream().filter(f -> f.stage == Stage.DONE).count();
+        if (done == files.size()) {
+            status = Status.COMPLETED;
+        } else if (done == 0) {
+            status = Status.FAILED;
+        } else {
+            status = Status.PARTIAL;
+        }
+        finishedAt = Instant.now();
+    }
+
+    /**
+     * Snapshot of the job suitable for returning from the status endpoint
+     */
+    public Map<String, Object> toSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("jobId", id);
+        summary.put("status", status);
+        summary.put("mode", mode);
+        summary.put("submittedAt", submittedAt.toEpochMilli());
+        summary.put("startedAt", startedAt != null ? startedAt.toEpochMilli() : null);
+        summary.put("finishedAt", finishedAt != null ? finishedAt.toEpochMilli() : null);
+
+        List<Map<String, Object>> fileSummaries = new ArrayList<>();
+        int completed = 0;
+        int failed = 0;
+        int totalDocuments = 0;
+        for (FileProgress progress : files.values()) {
+            fileSummaries.add(progress.toSummary());
+            if (progress.stage == Stage.DONE) {
+                completed++;
+                totalDocuments += progress.chunksWritten;
+            } else if (progress.stage == Stage.FAILED) {
+                failed++;
+            }
+        }
+        summary.put("totalFiles", files.size());
+        summary.put("completedFiles", completed);
+        summary.put("failedFiles", failed);
+        summary.put("totalDocumentsAdded", totalDocuments);
+        summary.put("files", fileSummaries);
+        return summary;
+    }
+
+    /**
+     * Per-file progress through the parse, split and store stages
+     */
+    public static class FileProgress {
+
+        private final String filename;
+        private volatile Stage stage = Stage.QUEUED;
+        private volatile int extractedDocuments;
+        private volatile int chunks;
+        private volatile int chunksWritten;
+        private volatile int chunksUnchanged;
+        private volatile int chunksRemoved;
+        private volatile String error;
+        private volatile Instant updatedAt = Instant.now();
+
+        FileProgress(String filename) {
+            this.filename = filename;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        void advance(Stage next) {
+            stage = next;
+            updatedAt = Instant.now();
+        }
+
+        void extracted(int documents) {
+            extractedDocuments = documents;
+            updatedAt = Instant.now();
+        }
+
+        void split(int chunkCount) {
+            chunks = chunkCount;
+            updatedAt = Instant.now();
+        }
+
+        void stored(int written, int unchanged, int removed) {
+            chunksWritten = written;
+            chunksUnchanged = unchanged;
+            chunksRemoved = removed;
+            updatedAt = Instant.now();
+        }
+
+        void complete() {
+            advance(Stage.DONE);
+        }
+
+        void fail(String message) {
+            error = message;
+            advance(Stage.FAILED);
+        }
+
+        Map<String, Object> toSummary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("filename", filename);
+            summary.put("stage", stage);
+            summary.put("extractedDocuments", extractedDocuments);
+            summary.put("chunks", chunks);
+            summary.put("chunksWritten", chunksWritten);
+            summary.put("chunksUnchanged", chunksUnchanged);
+            summary.put("chunksRemoved", chunksRemoved);
+            summary.put("updatedAt", updatedAt.toEpochMilli());
+            if (error != null) {
+                summary.put("error", error);
+            }
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package ai.com.example;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs document ingestion off the request thread as a pipeline of parse, split and store stages.
+ * Each stage has its own bounded pool; when a stage's queue is full the upstream stage blocks,
+ * so a large batch never holds more than a few parsed files in memory at once.
+ * <p>
+ * PDFs skip the split stage: their pages are extracted in parallel a window at a time, and every window
+ * is split and handed to the store stage as soon as it is extracted. Handing it over blocks while the store
+ * queue is full, so a PDF in flight holds at most its current window plus the windows queued for embedding.
+ * Only the chunk ids and the file's lexical index entries, which the index keeps anyway, grow with the
+ * document.
+ */
+@Slf4j
+@Service
+public class IngestionService {
+
+    /**
+     * UPSERT only writes chunks whose id is not stored yet, FULL rewrites every chunk of the file.
+     * Both remove chunks that no longer exist in the file, after the new ones are written.
+     */
+    public enum IndexMode { UPSERT, FULL }
+
+    private final VectorStore vectorStore;
+    private final ChunkStore chunkStore;
+    private final DocumentRegistry documentRegistry;
+    private final LexicalIndex lexicalIndex;
+    private final PdfPageExtractor pdfPageExtractor;
+    private final ChunkingService chunkingService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String embeddingModelName;
+    private final Path uploadDir;
+    private final int maxRetainedJobs;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    private final ExecutorService jobExecutor;
+    private final ThreadPoolExecutor parseExecutor;
+    private final ThreadPoolExecutor splitExecutor;
+    private final ThreadPoolExecutor storeExecutor;
+
+    public IngestionService(VectorStore vectorStore,
+                            ChunkStore chunkStore,
+                            DocumentRegistry documentRegistry,
+                            LexicalIndex lexicalIndex,
+                            PdfPageExtractor pdfPageExtractor,
+                            ChunkingService chunkingService,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${spring.ai.ollama.embedding.options.model:mxbai-embed-large}") String embeddingModelName,
+                            @Value("${documents.upload-dir:uploads}") String uploadDir,
+                            @Value("${ingestion.jobs.concurrency:2}") int jobConcurrency,
+                            @Value("${ingestion.jobs.max-retained:100}") int maxRetainedJobs,
+                            @Value("${ingestion.parse.threads:2}") int parseThreads,
+                            @Value("${ingestion.split.threads:2}") int splitThreads,
+                            @Value("${ingestion.store.threads:2}") int storeThreads,
+                            @Value("${ingestion.stage.queue-capacity:4}") int queueCapacity) {
+        this.vectorStore = vectorStore;
+        this.chunkStore = chunkStore;
+        this.documentRegistry = documentRegistry;
+        this.lexicalIndex = lexicalIndex;
+        this.pdfPageExtractor = pdfPageExtractor;
+        this.chunkingService = chunkingService;
+        this.eventPublisher = eventPublisher;
+        this.embeddingModelName = embeddingModelName;
+        this.uploadDir = Paths.get(uploadDir);
+        this.maxRetainedJobs = maxRetainedJobs;
+        this.jobExecutor = Executors.newFixedThreadPool(jobConcurrency, threadFactory("ingest-job"));
+        this.parseExecutor = stageExecutor("ingest-parse", parseThreads, queueCapacity);
+        this.splitExecutor = stageExecutor("ingest-split", splitThreads, queueCapacity);
+        this.storeExecutor = stageExecutor("ingest-store", storeThreads, queueCapacity);
+    }
+
+    /**
+     * Register a new job for the given files and start it in the background
+     */
+    public IngestionJob submit(List<String> filenames, IndexMode mode) {
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), new LinkedHashSet<>(filenames), mode);
+        evictFinishedJobs();
+        jobs.put(job.getId(), job);
+        jobExecutor.execute(() -> run(job));
+        log.info("Submitted ingestion job {} for {} files", job.getId(), job.getFilenames().size());
+        return job;
+    }
+
+    public Optional<IngestionJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(IngestionJob job) {
+        job.start();
+        List<CompletableFuture<Void>> pipelines = new ArrayList<>();
+
+        // Submitting to the parse stage blocks while it is saturated, which throttles this job
+        for (String filename : job.getFilenames()) {
+            IngestionJob.FileProgress progress = job.file(filename);
+            CompletableFuture<Void> stages = isPdf(filename)
+                    ? CompletableFuture.runAsync(() -> ingestPdf(job.getMode(), progress), parseExecutor)
+                    : CompletableFuture
+                            .supplyAsync(() -> parse(progress), parseExecutor)
+                            .thenApplyAsync(documents -> split(documents, progress), splitExecutor)
+                            .thenAcceptAsync(chunks -> store(chunks, job.getMode(), progress), storeExecutor);
+            CompletableFuture<Void> pipeline = stages
+                    .exceptionally(ex -> {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        log.error("Error processing file {}: {}", progress.getFilename(), cause.getMessage(), cause);
+                        progress.fail(cause.getMessage());
+                        return null;
+                    });
+            pipelines.add(pipeline);
+        }
+
+        CompletableFuture.allOf(pipelines.toArray(CompletableFuture[]::new))
+                .whenComplete((ignored, ex) -> {
+                    job.finish();
+                    log.info("Ingestion job {} finished with status {}", job.getId(), job.getStatus());
+                });
+    }
+
+    private List<Document> parse(IngestionJob.FileProgress progress) {
+        String filename = progress.getFilename();
+        Path filePath = resolve(progress);
+
+        // Use TikaDocumentReader for all other file types
+        TikaDocumentReader tikaReader = new TikaDocumentReader(new FileSystemResource(filePath));
+        List<Document> documents = tikaReader.get();
+        log.info("Extracted {} documents from file: {}", documents.size(), filename);
+
+        // Add metadata for filtering
+        for (Document doc : documents) {
+            doc.getMetadata().put("source", "uploaded");
+            doc.getMetadata().put("filename", filename);
+        }
+        progress.extracted(documents.size());
+        return documents;
+    }
+
+    /**
+     * Parse, split and store a PDF one window of pages at a time. A window's chunks are written by the store
+     * stage while the next window is extracted; submitting them blocks while that stage's queue is full, so
+     * extraction never runs more than a few windows ahead of embedding and a window's text is dropped once
+     * it is stored. The file stays in PARSING until its last window is extracted, then in STORING until
+     * every window is written.
+     */
+    private void ingestPdf(IndexMode mode, IngestionJob.FileProgress progress) {
+        String filename = progress.getFilename();
+        Path filePath = resolve(progress);
+
+        Set<String> existingIds = new HashSet<>(chunkStore.findChunkIds(filename));
+        Set<String> currentIds = new HashSet<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        LexicalIndex.Replacement lexical = lexicalIndex.replace(filename);
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        AtomicInteger pages = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+
+        int pageCount = pdfPageExtractor.extract(filePath, Map.of("source", "uploaded", "filename", filename), window -> {
+            List<Document> chunks = ChunkIds.assign(filename, chunkingService.apply(window), occurrences);
+            progress.extracted(pages.addAndGet(window.size()));
+            lexical.add(chunks);
+            chunks.forEach(chunk -> currentIds.add(chunk.getId()));
+            progress.split(currentIds.size());
+
+            List<Document> toWrite = mode == IndexMode.FULL
+                    ? chunks
+                    : chunks.stream().filter(doc -> !existingIds.contains(doc.getId())).toList();
+            // Stop extracting as soon as an earlier window could not be stored
+            writes.stream().filter(CompletableFuture::isCompletedExceptionally).findFirst().ifPresent(CompletableFuture::join);
+            writes.removeIf(CompletableFuture::isDone);
+            if (!toWrite.isEmpty()) {
+                writes.add(CompletableFuture.runAsync(() -> {
+                    vectorStore.add(toWrite);
+                    written.addAndGet(toWrite.size());
+                }, storeExecutor));
+            }
+        });
+        log.info("Extracted {} pages into {} chunks from PDF: {}", pageCount, currentIds.size(), filename);
+
+        progress.advance(IngestionJob.Stage.STORING);
+        CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+        finishStore(mode, progress, existingIds, currentIds, written.get(), lexical);
+    }
+
+    private Path resolve(IngestionJob.FileProgress progress) {
+        progress.advance(IngestionJob.Stage.PARSING);
+        Path filePath = uploadDir.resolve(progress.getFilename());
+        if (!Files.exists(filePath)) {
+            log.warn("File not found: {}", progress.getFilename());
+            throw new IllegalStateException("file not found");
+        }
+        return filePath;
+    }
+
+    private List<Document> split(List<Document> documents, IngestionJob.FileProgress progress) {
+        progress.advance(IngestionJob.Stage.SPLITTING);
+
+        // Split documents for better vector indexing
+        List<Document> splitDocuments = chunkingService.apply(documents);
+        log.info("Split into {} smaller documents for file: {}", splitDocuments.size(), progress.getFilename());
+
+        progress.split(splitDocuments.size());
+        return splitDocuments;
+    }
+
+    private void store(List<Document> chunks, IndexMode mode, IngestionJob.FileProgress progress) {
+        progress.advance(IngestionJob.Stage.STORING);
+        String filename = progress.getFilename();
+
+        // Stable ids let us diff against what is already stored for this file
+        List<Document> identified = ChunkIds.assign(filename, chunks);
+        Set<String> existingIds = new HashSet<>(chunkStore.findChunkIds(filename));
+        List<Document> toWrite = mode == IndexMode.FULL
+                ? identified
+                : identified.stream().filter(doc -> !existingIds.contains(doc.getId())).toList();
+
+        // Embedding happens inside the vector store, so this stage covers both embed and upsert
+        if (!toWrite.isEmpty()) {
+            vectorStore.add(toWrite);
+        }
+
+        Set<String> currentIds = identified.stream().map(Document::getId).collect(Collectors.toSet());
+        LexicalIndex.Replacement lexical = lexicalIndex.replace(filename);
+        lexical.add(identified);
+        finishStore(mode, progress, existingIds, currentIds, toWrite.size(), lexical);
+    }
+
+    /**
+     * Bookkeeping once every new chunk of the file is written
+     */
+    private void finishStore(IndexMode mode, IngestionJob.FileProgress progress, Set<String> existingIds,
+                             Set<String> currentIds, int written, LexicalIndex.Replacement lexical) {
+        String filename = progress.getFilename();
+
+        // Vanished chunks are removed only after the new ones are searchable, so the file never drops out
+        List<String> vanishedIds = existingIds.stream().filter(id -> !currentIds.contains(id)).toList();
+        chunkStore.delete(vanishedIds);
+        lexical.commit();
+        documentRegistry.recordChunks(filename, List.copyOf(currentIds), embeddingModelName);
+        if (written > 0 || !vanishedIds.isEmpty()) {
+            eventPublisher.publishEvent(new CorpusChangedEvent(filename));
+        }
+
+        int unchanged = currentIds.size() - written;
+        log.info("Indexed file {} in {} mode: {} chunks written, {} unchanged, {} removed",
+                filename, mode, written, unchanged, vanishedIds.size());
+        progress.stored(written, unchanged, vanishedIds.size());
+        progress.complete();
+    }
+
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - maxRetainedJobs + 1;
+        if (excess <= 0) {
+            return;
+        }
+        jobs.values().stream()
+                .filter(IngestionJob::isFinished)
+                .sorted(Comparator.comparing(IngestionJob::getSubmittedAt))
+                .limit(excess)
+                .forEach(job -> jobs.remove(job.getId()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+        parseExecutor.shutdownNow();
+        splitExecutor.shutdownNow();
+        storeExecutor.shutdownNow();
+    }
+
+    private static boolean isPdf(String filename) {
+        return filename.toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    private static ThreadPoolExecutor stageExecutor(String name, int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory(name), IngestionService::waitForCapacity);
+    }
+
+    // Back-pressure: instead of rejecting work when a stage is full, block the submitting thread
+    private static void waitForCapacity(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Ingestion stage has been shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for ingestion stage capacity", e);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
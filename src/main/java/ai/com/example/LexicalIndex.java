@@ -0,0 +1,326 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-process BM25 inverted index over the same chunks that are stored in the vector store.
+ * <p>
+ * Exact names, codes and numbers ("4x100m", venue names) match here even when their embedding is
+ * not close to the question's. Chunks are indexed and replaced per file, and every file is persisted
+ * as its own segment so an update only rewrites that file's segment.
+ */
+@Slf4j
+@Component
+public class LexicalIndex {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ObjectMapper objectMapper;
+    private final Path indexDir;
+    private final double k1;
+    private final double b;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, List<IndexedChunk>> chunksByFilename = new HashMap<>();
+    private final Map<String, Map<IndexedChunk, Integer>> postings = new HashMap<>();
+    private long totalLength;
+    private int chunkCount;
+
+    public LexicalIndex(ObjectMapper objectMapper,
+                        @Value("${rag.lexical.index-dir:data/lexical-index}") String indexDir,
+                        @Value("${rag.lexical.k1:1.2}") double k1,
+                        @Value("${rag.lexical.b:0.75}") double b) throws IOException {
+        this.objectMapper = objectMapper;
+        this.indexDir = Paths.get(indexDir);
+        this.k1 = k1;
+        this.b = b;
+        Files.createDirectories(this.indexDir);
+        load();
+    }
+
+    /**
+     * Replace every indexed chunk of the file with the given chunks, which must already carry their ids
+     */
+    public void index(String filename, List<Document> chunks) {
+        Replacement replacement = replace(filename);
+        replacement.add(chunks);
+        replacement.commit();
+    }
+
+    /**
+     * Replace the chunks of a file that is handed over in parts. The file's previous chunks stay
+     * searchable until {@link Replacement#commit()}.
+     */
+    public Replacement replace(String filename) {
+        return new Replacement(filename);
+    }
+
+    public void remove(String filename) {
+        lock.writeLock().lock();
+        try {
+            unindex(filename);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            Files.deleteIfExists(segment(filename));
+        } catch (IOException e) {
+            log.warn("Could not delete lexical index segment of {}: {}", filename, e.getMessage());
+        }
+    }
+
+    public boolean contains(String filename) {
+        lock.readLock().lock();
+        try {
+            return chunksByFilename.containsKey(filename);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return chunkCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Best BM25 matches for the query among chunks whose metadata passes the filter, best first.
+     * The score is returned on each document.
+     */
+    public List<Document> search(String query, int topK, Predicate<Map<String, Object>> filter) {
+        Map<String, Integer> queryTerms = termFrequencies(query);
+        PriorityQueue<ScoredChunk> best = new PriorityQueue<>();
+
+        lock.readLock().lock();
+        try {
+            if (chunkCount == 0) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / chunkCount;
+            Map<IndexedChunk, Double> scores = new HashMap<>();
+            for (String term : queryTerms.keySet()) {
+                Map<IndexedChunk, Integer> matches = postings.get(term);
+                if (matches == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (chunkCount - matches.size() + 0.5) / (matches.size() + 0.5));
+                for (Map.Entry<IndexedChunk, Integer> match : matches.entrySet()) {
+                    int tf = match.getValue();
+                    double norm = k1 * (1 - b + b * match.getKey().length() / averageLength);
+                    scores.merge(match.getKey(), idf * tf * (k1 + 1) / (tf + norm), Double::sum);
+                }
+            }
+
+            for (Map.Entry<IndexedChunk, Double> scored : scores.entrySet()) {
+                if (!filter.test(scored.getKey().metadata())) {
+                    continue;
+                }
+                best.add(new ScoredChunk(scored.getKey(), scored.getValue()));
+                if (best.size() > topK) {
+                    best.poll();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Document> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            ScoredChunk scored = best.poll();
+            results.add(0, Document.builder()
+                    .id(scored.chunk().id())
+                    .text(scored.chunk().text())
+                    .metadata(scored.chunk().metadata())
+                    .score(scored.score())
+                    .build());
+        }
+        return results;
+    }
+
+    static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        for (String term : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!term.isEmpty()) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    private void add(String filename, List<IndexedChunk> chunks) {
+        for (IndexedChunk chunk : chunks) {
+            chunk.terms().forEach((term, tf) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(chunk, tf));
+            totalLength += chunk.length();
+        }
+        chunkCount += chunks.size();
+        chunksByFilename.put(filename, chunks);
+    }
+
+    private void unindex(String filename) {
+        List<IndexedChunk> previous = chunksByFilename.remove(filename);
+        if (previous == null) {
+            return;
+        }
+        for (IndexedChunk chunk : previous) {
+            for (String term : chunk.terms().keySet()) {
+                Map<IndexedChunk, Integer> matches = postings.get(term);
+                matches.remove(chunk);
+                if (matches.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+            totalLength -= chunk.length();
+        }
+        chunkCount -= previous.size();
+    }
+
+    private void load() throws IOException {
+        try (Stream<Path> segments = Files.list(indexDir)) {
+            for (Path path : segments.filter(p -> p.toString().endsWith(".json")).toList()) {
+                try {
+                    Segment segment = objectMapper.readValue(path.toFile(), Segment.class);
+                    add(segment.filename(), segment.chunks().stream()
+                            .map(chunk -> new IndexedChunk(chunk.id(), chunk.text(), chunk.metadata()))
+                            .toList());
+                } catch (IOException e) {
+                    log.warn("Ignoring unreadable lexical index segment {}: {}", path, e.getMessage());
+                }
+            }
+        }
+        log.info("Lexical index loaded with {} chunks from {} files", chunkCount, chunksByFilename.size());
+    }
+
+    private void persist(String filename, List<IndexedChunk> chunks) {
+        Path target = segment(filename);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            List<StoredChunk> stored = chunks.stream()
+                    .map(chunk -> new StoredChunk(chunk.id(), chunk.text(), chunk.metadata()))
+                    .toList();
+            objectMapper.writeValue(tmp.toFile(), new Segment(filename, stored));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The chunks are searchable now, they just won't be after a restart until the file is re-indexed
+            log.warn("Could not persist lexical index segment of {}: {}", filename, e.getMessage());
+        }
+    }
+
+    private Path segment(String filename) {
+        return indexDir.resolve(ChunkIds.sha256Hex(filename) + ".json");
+    }
+
+    /**
+     * The new chunks of one file, collected in the form the index keeps them in, so a caller never needs
+     * to hold the file's documents as well. Not thread-safe, meant to be filled by one ingestion pipeline.
+     */
+    public final class Replacement {
+
+        private final String filename;
+        private final List<IndexedChunk> chunks = new ArrayList<>();
+
+        private Replacement(String filename) {
+            this.filename = filename;
+        }
+
+        /**
+         * Add chunks that already carry their ids
+         */
+        public void add(List<Document> documents) {
+            for (Document chunk : documents) {
+                chunks.add(new IndexedChunk(chunk.getId(), chunk.getText(), chunk.getMetadata()));
+            }
+        }
+
+        public void commit() {
+            List<IndexedChunk> indexed = List.copyOf(chunks);
+            lock.writeLock().lock();
+            try {
+                unindex(filename);
+                LexicalIndex.this.add(filename, indexed);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            persist(filename, indexed);
+        }
+    }
+
+    /**
+     * Indexed chunks are compared by identity, the same id may briefly exist twice while a file is replaced
+     */
+    private static final class IndexedChunk {
+
+        private final String id;
+        private final String text;
+        private final Map<String, Object> metadata;
+        private final Map<String, Integer> terms;
+        private final int length;
+
+        private IndexedChunk(String id, String text, Map<String, Object> metadata) {
+            this.id = id;
+            this.text = text != null ? text : "";
+            this.metadata = metadata != null ? Map.copyOf(metadata) : Map.of();
+            this.terms = termFrequencies(this.text);
+            this.length = this.terms.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        String id() {
+            return id;
+        }
+
+        String text() {
+            return text;
+        }
+
+        Map<String, Object> metadata() {
+            return metadata;
+        }
+
+        Map<String, Integer> terms() {
+            return terms;
+        }
+
+        int length() {
+            return length;
+        }
+    }
+
+    private record ScoredChunk(IndexedChunk chunk, double score) implements Comparable<ScoredChunk> {
+
+        @Override
+        public int compareTo(ScoredChunk other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
+    record Segment(String filename, List<StoredChunk> chunks) {}
+
+    record StoredChunk(String id, String text, Map<String, Object> metadata) {}
+}
@@ -0,0 +1,76 @@
+package ai.com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pointwise re-ranking by the chat model: each candidate is rated 0 to 10 against the question in its own call.
+ * Selected with {@code rag.rerank.scorer=llm}.
+ * <p>
+ * The ratings share the {@link ChatGateway} with the answers they are for, so they are kept from crowding it:
+ * they run at STANDARD priority, behind interactive answers, one request rates at most {@code max-candidates}
+ * chunks, and all requests together have at most {@code max-in-gateway} ratings queued or running in the
+ * gateway. Further ratings wait here until a place frees up or their request's rerank budget runs out.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rag.rerank.scorer", havingValue = "llm")
+public class LlmReranker implements Reranker {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+(\\.\\d+)?");
+
+    private final ChatModel chatModel;
+    private final PromptTemplate promptTemplate;
+    private final int maxCandidates;
+    private final Semaphore gatewayPlaces;
+
+    public LlmReranker(ChatGateway chatGateway,
+                       @Value("classpath:/prompts/rerank-prompt-template.st") Resource promptTemplate,
+                       @Value("${rag.rerank.llm.max-candidates:6}") int maxCandidates,
+                       @Value("${rag.rerank.llm.max-in-gateway:2}") int maxInGateway) {
+        this.chatModel = chatGateway.model("rerank", ChatGateway.Priority.STANDARD);
+        this.promptTemplate = new PromptTemplate(promptTemplate);
+        this.maxCandidates = maxCandidates;
+        this.gatewayPlaces = new Semaphore(maxInGateway);
+    }
+
+    @Override
+    public int maxCandidates() {
+        return maxCandidates;
+    }
+
+    @Override
+    public double score(String query, Document candidate) {
+        String prompt = promptTemplate.render(Map.of("question", query, "passage", candidate.getText()));
+        String answer;
+        try {
+            // Interrupted when the rerank budget is spent, the request then keeps the search order
+            gatewayPlaces.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to rate chunk " + candidate.getId(), e);
+        }
+        try {
+            answer = chatModel.call(prompt);
+        } finally {
+            gatewayPlaces.release();
+        }
+        Matcher matcher = NUMBER.matcher(answer != null ? answer : "");
+        if (!matcher.find()) {
+            log.debug("No relevance rating in '{}' for chunk {}", answer, candidate.getId());
+            return 0;
+        }
+        return Double.parseDouble(matcher.group());
+    }
+}
@@ -3,7 +3,9 @@ package ai.com.example;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
@@ -22,21 +24,50 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Drafts an email from a free-form request and sends it.
+ * <p>
+ * In the default {@code STRUCTURED} mode one model call returns the subject and body as JSON, which is
+ * parsed with a {@link BeanOutputConverter} and handed straight to {@link EmailService}. The {@code TOOLS}
+ * mode keeps the original flow of separate subject and body calls plus a third call that lets the model
+ * invoke {@code sendEmailFunction}.
+ */
 @Slf4j
 @RestController
 public class MailController {
 
+    public enum GenerationMode { STRUCTURED, TOOLS }
+
+    private static final String SYSTEM_PROMPT = "You are a helpful AI Assistant that generates professional email communications.";
+    private static final String SENDER_NAME = "AI Assistant";
+
     private final ChatClient chatClient;
+    private final ChatClient draftClient;
     private final PromptTemplate emailPromptTemplate;
+    private final PromptTemplate draftPromptTemplate;
+    private final BeanOutputConverter<EmailDraft> draftConverter = new BeanOutputConverter<>(EmailDraft.class);
+    private final EmailService emailService;
+    private final GenerationMode mode;
 
     public MailController(
-            ChatClient.Builder builder,
-            @Value("classpath:/prompts/email-prompt-template.st") Resource emailPromptTemplateResource
+            ChatGateway chatGateway,
+            EmailService emailService,
+            @Value("${mail.generation.mode:STRUCTURED}") GenerationMode mode,
+            @Value("classpath:/prompts/email-prompt-template.st") Resource emailPromptTemplateResource,
+            @Value("classpath:/prompts/email-draft-prompt-template.st") Resource draftPromptTemplateResource
     ) {
-        this.chatClient = builder
-                .defaultSystem("You are a helpful AI Assistant that generates professional email communications.")
+        ChatModel chatModel = chatGateway.model("mail", ChatGateway.Priority.BATCH);
+        this.chatClient = ChatClient.builder(chatModel)
+                .defaultSystem(SYSTEM_PROMPT)
                 .defaultTools("sendEmailFunction")
                 .build();
+        // No tools here, the draft must never be sent by the model itself
+        this.draftClient = ChatClient.builder(chatModel)
+                .defaultSystem(SYSTEM_PROMPT)
+                .build();
+        this.draftPromptTemplate = new PromptTemplate(draftPromptTemplateResource);
+        this.emailService = emailService;
+        this.mode = mode;
 
         // Load prompt template
         try {
@@ -63,55 +94,14 @@ public class MailController {
             }
             log.info("Extracted recipient email: {}", email);
 
-            // Generate subject using LLM
-            log.info("Requesting AI to generate email subject...");
-            String subject = generateEmailSubject(prompt);
-            log.info("Generated Email Subject: {}", subject);
-
-            // Prepare prompt template parameters
-            Map<String, Object> templateParams = new HashMap<>();
-            templateParams.put("recipient_name", extractNameFromEmail(email));
-            templateParams.put("sender_name", "AI Assistant");
-            templateParams.put("subject", subject);
-            templateParams.put("email_body", prompt);
-
-            // Generate email body using prompt template
-            log.info("Requesting AI to generate email body...");
-            Prompt generatedPrompt = emailPromptTemplate.create(templateParams);
-            String emailContent = chatClient.prompt(generatedPrompt)
-                    .user(prompt)
-                    .call()
-                    .content();
-            log.info("AI Response for email generation: \n{}", emailContent);
-
-            // Extract body from AI response
-            String[] parts = emailContent.split("\n", 2);
-            String body = parts.length > 1 ? parts[1].replace("Body:", "").trim() : "No Body";
-            log.info("Generated Email Body: {}", body);
-
-            // Send email using AI function
-            log.info("Sending email to {} with subject '{}'...", email, subject);
-            String sendResponse = chatClient.prompt()
-                    .user("Send an email to " + email + " with subject '" + subject + "' and body '" + body + "'.")
-                    .call()
-                    .content();
-
-            log.info("Email sending response: {}", sendResponse);
-
-            // Check for successful sending
-            if (sendResponse.toLowerCase().contains("success") ||
-                    sendResponse.toLowerCase().contains("sent") ||
-                    sendResponse.toLowerCase().contains("email delivered") ||
-                    sendResponse.toLowerCase().contains("delivered")) {
-                return ResponseEntity
-                        .ok()
-                        .body(String.format("Email successfully sent to %s with subject '%s'", email, subject));
-            } else {
-                log.error("Failed to send email: {}", sendResponse);
-                return ResponseEntity
-                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body("Failed to send email: " + sendResponse);
-            }
+            return mode == GenerationMode.STRUCTURED
+                    ? sendStructured(prompt, email)
+                    : sendWithTools(prompt, email);
+        } catch (ChatGateway.ChatRejectedException e) {
+            log.warn("Email request rejected: {}", e.getReason());
+            return ResponseEntity
+                    .status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(e.getReason());
         } catch (Exception e) {
             log.error("Unexpected error during email sending", e);
             return ResponseEntity
@@ -120,6 +110,95 @@ public class MailController {
         }
     }
 
+    /**
+     * One model call for subject and body, then the mail is queued and its id returned with 202 Accepted
+     */
+    private ResponseEntity<String> sendStructured(String prompt, String email) {
+        Map<String, Object> templateParams = new HashMap<>();
+        templateParams.put("recipient_name", extractNameFromEmail(email));
+        templateParams.put("sender_name", SENDER_NAME);
+        templateParams.put("request", prompt);
+        templateParams.put("format", draftConverter.getFormat());
+
+        log.info("Requesting AI to draft email subject and body...");
+        String response = draftClient.prompt(draftPromptTemplate.create(templateParams))
+                .call()
+                .content();
+        EmailDraft draft = draftConverter.convert(response);
+        if (draft == null || draft.subject() == null || draft.body() == null) {
+            log.error("AI response is not a complete email draft: {}", response);
+            return ResponseEntity
+                    .status(HttpStatus.BAD_GATEWAY)
+                    .body("Failed to draft email: the model did not return a subject and body");
+        }
+        log.info("Generated Email Subject: {}", draft.subject());
+
+        EmailService.EmailResponse sent = emailService.apply(new EmailService.EmailRequest(email, draft.subject(), draft.body()));
+        if (!"Queued".equals(sent.status())) {
+            log.error("Failed to send email: {}", sent.message());
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to send email: " + sent.message());
+        }
+        return ResponseEntity
+                .accepted()
+                .body(String.format("Email to %s with subject '%s' queued with id %s, status at /api/mail/%s",
+                        email, draft.subject(), sent.messageId(), sent.messageId()));
+    }
+
+    private ResponseEntity<String> sendWithTools(String prompt, String email) {
+        // Generate subject using LLM
+        log.info("Requesting AI to generate email subject...");
+        String subject = generateEmailSubject(prompt);
+        log.info("Generated Email Subject: {}", subject);
+
+        // Prepare prompt template parameters
+        Map<String, Object> templateParams = new HashMap<>();
+        templateParams.put("recipient_name", extractNameFromEmail(email));
+        templateParams.put("sender_name", SENDER_NAME);
+        templateParams.put("subject", subject);
+        templateParams.put("email_body", prompt);
+
+        // Generate email body using prompt template
+        log.info("Requesting AI to generate email body...");
+        Prompt generatedPrompt = emailPromptTemplate.create(templateParams);
+        String emailContent = chatClient.prompt(generatedPrompt)
+                .user(prompt)
+                .call()
+                .content();
+        log.info("AI Response for email generation: \n{}", emailContent);
+
+        // Extract body from AI response
+        String[] parts = emailContent.split("\n", 2);
+        String body = parts.length > 1 ? parts[1].replace("Body:", "").trim() : "No Body";
+        log.info("Generated Email Body: {}", body);
+
+        // Send email using AI function
+        log.info("Sending email to {} with subject '{}'...", email, subject);
+        String sendResponse = chatClient.prompt()
+                .user("Send an email to " + email + " with subject '" + subject + "' and body '" + body + "'.")
+                .call()
+                .content();
+
+        log.info("Email sending response: {}", sendResponse);
+
+        // Check for successful sending
+        if (sendResponse.toLowerCase().contains("queued") ||
+                sendResponse.toLowerCase().contains("success") ||
+                sendResponse.toLowerCase().contains("sent") ||
+                sendResponse.toLowerCase().contains("email delivered") ||
+                sendResponse.toLowerCase().contains("delivered")) {
+            return ResponseEntity
+                    .ok()
+                    .body(String.format("Email successfully sent to %s with subject '%s'", email, subject));
+        } else {
+            log.error("Failed to send email: {}", sendResponse);
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to send email: " + sendResponse);
+        }
+    }
+
     // Method to generate email subject using LLM
     private String generateEmailSubject(String prompt) {
         String subjectGenerationPrompt = "Generate a concise, professional email subject line that captures the essence of this request: " + prompt;
@@ -154,4 +233,6 @@ public class MailController {
         }
         return "Valued Recipient";
     }
+
+    public record EmailDraft(String subject, String body) {}
 }
\ No newline at end of file
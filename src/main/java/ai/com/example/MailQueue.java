@@ -0,0 +1,370 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable outbound mail queue. A message is written to its own file before {@link #enqueue} returns, so it
+ * survives a restart. A pool of workers sends due messages in batches. Each batch goes over a single SMTP
+ * connection, because {@code JavaMailSenderImpl} sends all messages of one {@link MailSender#send(SimpleMailMessage...)} call over it.
+ * Once a message is due, its worker lingers briefly for more to fill the batch, so mail enqueued in quick
+ * succession shares a connection instead of opening one each.
+ * <p>
+ * A failed message is retried with exponential backoff until it reaches {@code max-attempts}, then it is
+ * marked failed. Delivery is at least once: a message whose send was interrupted by a crash is sent again.
+ * The workers are platform threads, because Jakarta Mail blocks inside synchronized code.
+ */
+@Slf4j
+@Component
+public class MailQueue {
+
+    private final MailSender mailSender;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int batchSize;
+    private final Duration linger;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration retention;
+
+    private final Map<String, OutboundMail> messages = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<OutboundMail> pending = new PriorityQueue<>(Comparator.comparingLong(OutboundMail::nextAttemptAt));
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+
+    public MailQueue(MailSender mailSender,
+                     ObjectMapper objectMapper,
+                     MeterRegistry meterRegistry,
+                     @Value("${mail.queue.dir:data/mail-queue}") String directory,
+                     @Value("${mail.queue.workers:2}") int workerCount,
+                     @Value("${mail.queue.batch-size:20}") int batchSize,
+                     @Value("${mail.queue.linger:200ms}") Duration linger,
+                     @Value("${mail.queue.max-attempts:5}") int maxAttempts,
+                     @Value("${mail.queue.initial-backoff:30s}") Duration initialBackoff,
+                     @Value("${mail.queue.max-backoff:30m}") Duration maxBackoff,
+                     @Value("${mail.queue.retention:7d}") Duration retention) throws IOException {
+        this.mailSender = mailSender;
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.batchSize = batchSize;
+        this.linger = linger;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retention = retention;
+
+        this.sent = outcomeCounter("sent", meterRegistry);
+        this.retried = outcomeCounter("retried", meterRegistry);
+        this.failed = outcomeCounter("failed", meterRegistry);
+        Gauge.builder("mail.queue.pending", pending, queue -> queued())
+                .description("Messages waiting to be sent, including those waiting for a retry")
+                .register(meterRegistry);
+
+        Files.createDirectories(this.directory);
+        load();
+
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "mail-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Store the message and schedule it for sending right away
+     */
+    public OutboundMail enqueue(String to, String subject, String body) {
+        OutboundMail mail = OutboundMail.queued(UUID.randomUUID().toString(), to, subject, body, System.currentTimeMillis());
+        persist(mail);
+        messages.put(mail.id(), mail);
+        schedule(mail);
+        log.info("Queued email {} to {}", mail.id(), to);
+        return mail;
+    }
+
+    public Optional<OutboundMail> get(String id) {
+        return Optional.ofNullable(messages.get(id));
+    }
+
+    /**
+     * Messages in the given status, newest first, or all of them when status is {@code null}
+     */
+    public List<OutboundMail> list(OutboundMail.Status status) {
+        return messages.values().stream()
+                .filter(mail -> status == null || mail.status() == status)
+                .sorted(Comparator.comparingLong(OutboundMail::createdAt).reversed())
+                .toList();
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.shutdown();
+        // A batch cut short here is still queued on disk and is sent after the restart
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                List<OutboundMail> batch = takeBatch();
+                if (!batch.isEmpty()) {
+                    send(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Mail worker failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Wait until at least one message is due and up to the linger for a full batch, then take up to a batch
+     * of due messages
+     */
+    private List<OutboundMail> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running) {
+                OutboundMail next = pending.peek();
+                long wait = next == null ? Long.MAX_VALUE : next.nextAttemptAt() - System.currentTimeMillis();
+                if (wait <= 0) {
+                    break;
+                }
+                if (next == null) {
+                    changed.await();
+                } else {
+                    changed.await(wait, TimeUnit.MILLISECONDS);
+                }
+            }
+            long lingerUntil = System.currentTimeMillis() + linger.toMillis();
+            long now;
+            while (running && (now = System.currentTimeMillis()) < lingerUntil && due(now) < batchSize) {
+                changed.await(lingerUntil - now, TimeUnit.MILLISECONDS);
+            }
+
+            List<OutboundMail> batch = new ArrayList<>();
+            List<OutboundMail> deferred = new ArrayList<>();
+            Set<List<String>> contents = new HashSet<>();
+            now = System.currentTimeMillis();
+            while (running && batch.size() < batchSize && !pending.isEmpty() && pending.peek().nextAttemptAt() <= now) {
+                OutboundMail mail = pending.poll();
+                // The sender reports failures keyed by equal messages, so identical ones go in separate batches
+                if (contents.add(Arrays.asList(mail.to(), mail.subject(), mail.body()))) {
+                    batch.add(mail);
+                } else {
+                    deferred.add(mail);
+                }
+            }
+            pending.addAll(deferred);
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How many queued messages are due, counting no further than a batch
+     */
+    private int due(long now) {
+        int due = 0;
+        for (Iterator<OutboundMail> iterator = pending.iterator(); iterator.hasNext() && due < batchSize; ) {
+            if (iterator.next().nextAttemptAt() <= now) {
+                due++;
+            }
+        }
+        return due;
+    }
+
+    private void send(List<OutboundMail> batch) {
+        SimpleMailMessage[] mimeMessages = new SimpleMailMessage[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundMail mail = batch.get(i);
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo(mail.to());
+            message.setSubject(mail.subject());
+            message.setText(mail.body());
+            mimeMessages[i] = message;
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        MailException batchFailure = null;
+        try {
+            mailSender.send(mimeMessages);
+        } catch (MailSendException e) {
+            // Per-message failures when the connection worked, none when it could not be opened at all.
+            // Looked up by identity, the messages of one batch are all distinct objects.
+            failures = new IdentityHashMap<>(e.getFailedMessages());
+            if (failures.isEmpty()) {
+                batchFailure = e;
+            }
+        } catch (MailException e) {
+            batchFailure = e;
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundMail mail = batch.get(i);
+            Exception failure = batchFailure != null ? batchFailure : failures.get(mimeMessages[i]);
+            if (failure == null) {
+                update(mail.sent(now));
+                sent.increment();
+                log.info("Sent email {} to {}", mail.id(), mail.to());
+            } else {
+                retryOrFail(mail, failure.getMessage(), now);
+            }
+        }
+        pruneFinished(now);
+    }
+
+    private void retryOrFail(OutboundMail mail, String error, long now) {
+        if (mail.attempts() + 1 >= maxAttempts) {
+            update(mail.failed(error));
+            failed.increment();
+            log.error("Giving up on email {} to {} after {} attempts: {}", mail.id(), mail.to(), mail.attempts() + 1, error);
+            return;
+        }
+        // 1x, 2x, 4x ... the initial backoff, capped
+        long backoff = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(mail.attempts(), 20));
+        OutboundMail retry = mail.retryAt(now + backoff, error);
+        update(retry);
+        schedule(retry);
+        retried.increment();
+        log.warn("Sending email {} to {} failed, retrying in {} ms: {}", mail.id(), mail.to(), backoff, error);
+    }
+
+    private void update(OutboundMail mail) {
+        persist(mail);
+        messages.put(mail.id(), mail);
+    }
+
+    private void schedule(OutboundMail mail) {
+        lock.lock();
+        try {
+            pending.add(mail);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void pruneFinished(long now) {
+        long cutoff = now - retention.toMillis();
+        for (OutboundMail mail : messages.values()) {
+            if (mail.status() != OutboundMail.Status.QUEUED && mail.createdAt() < cutoff) {
+                messages.remove(mail.id());
+                try {
+                    Files.deleteIfExists(file(mail.id()));
+                } catch (IOException e) {
+                    log.warn("Could not delete finished email {}: {}", mail.id(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void persist(OutboundMail mail) {
+        Path target = file(mail.id());
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            objectMapper.writeValue(tmp.toFile(), mail);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write queued email " + mail.id(), e);
+        }
+    }
+
+    private void load() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path file : files) {
+                try {
+                    OutboundMail mail = objectMapper.readValue(file.toFile(), OutboundMail.class);
+                    messages.put(mail.id(), mail);
+                    if (mail.status() == OutboundMail.Status.QUEUED) {
+                        pending.add(mail);
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable queued email {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        pruneFinished(System.currentTimeMillis());
+        log.info("Mail queue loaded with {} messages, {} waiting to be sent", messages.size(), pending.size());
+    }
+
+    private Path file(String id) {
+        return directory.resolve(id + ".json");
+    }
+
+    private static Counter outcomeCounter(String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("mail.queue.messages")
+                .description("Outbound mail send attempts by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
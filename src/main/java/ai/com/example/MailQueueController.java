@@ -0,0 +1,47 @@
+package ai.com.example;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/mail")
+public class MailQueueController {
+
+    private final MailQueue mailQueue;
+
+    public MailQueueController(MailQueue mailQueue) {
+        this.mailQueue = mailQueue;
+    }
+
+    /**
+     * Delivery status of a queued email
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getMail(@PathVariable String id) {
+        return mailQueue.get(id)
+                .map(mail -> ResponseEntity.ok(mail.toSummary()))
+                .orElseGet(() -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("error", "No queued email found with id " + id);
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+                });
+    }
+
+    /**
+     * Emails known to the queue, newest first, optionally only those in one status
+     */
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> listMail(@RequestParam(value = "status", required = false) OutboundMail.Status status) {
+        return ResponseEntity.ok(mailQueue.list(status).stream()
+                .map(OutboundMail::toSummary)
+                .collect(Collectors.toList()));
+    }
+}
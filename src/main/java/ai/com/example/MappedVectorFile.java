@@ -0,0 +1,152 @@
+package ai.com.example;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of fixed-size float32 vectors, memory-mapped so the vectors stay off the heap and
+ * are paged in by the operating system on demand.
+ * <p>
+ * The file is mapped in segments of 64MB because a single mapping is limited to 2GB, and grows one
+ * segment at a time. Reads use absolute indexes and may run concurrently with each other, but appends
+ * need exclusive access.
+ */
+final class MappedVectorFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x484e5356; // "HNSV"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final long SEGMENT_BYTES = 1L << 26;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int dimensions;
+    private final int vectorsPerSegment;
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private volatile int count;
+
+    private MappedVectorFile(FileChannel channel, MappedByteBuffer header, int dimensions, int count) {
+        this.channel = channel;
+        this.header = header;
+        this.dimensions = dimensions;
+        this.vectorsPerSegment = (int) Math.max(1, SEGMENT_BYTES / ((long) dimensions * Float.BYTES));
+        this.count = count;
+    }
+
+    /**
+     * Open an existing file, or create one for vectors of the given size when {@code dimensions} is positive
+     *
+     * @return the file, or {@code null} if it does not exist and no dimensions were given
+     */
+    static MappedVectorFile open(Path file, int dimensions) throws IOException {
+        boolean exists = file.toFile().exists() && file.toFile().length() >= HEADER_BYTES;
+        if (!exists && dimensions <= 0) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (!exists) {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, dimensions).putInt(12, 0);
+            return new MappedVectorFile(channel, header, dimensions, 0);
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a vector file: " + file);
+        }
+        MappedVectorFile vectors = new MappedVectorFile(channel, header, header.getInt(8), header.getInt(12));
+        for (int segment = 0; (long) segment * vectors.vectorsPerSegment < vectors.count; segment++) {
+            vectors.map(segment);
+        }
+        return vectors;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Append a vector and return its slot
+     */
+    int append(float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        int slot = count;
+        int segment = slot / vectorsPerSegment;
+        while (segments.size() <= segment) {
+            map(segments.size());
+        }
+        segments.get(segment).put((slot % vectorsPerSegment) * dimensions, vector);
+        count = slot + 1;
+        header.putInt(12, count);
+        return slot;
+    }
+
+    /**
+     * Forget every vector from the given slot on, used when the file is ahead of the index after a crash
+     */
+    void truncate(int newCount) {
+        if (newCount < count) {
+            count = newCount;
+            header.putInt(12, count);
+        }
+    }
+
+    float[] get(int slot) {
+        float[] vector = new float[dimensions];
+        segment(slot).get((slot % vectorsPerSegment) * dimensions, vector);
+        return vector;
+    }
+
+    float dot(int slot, float[] query) {
+        FloatBuffer segment = segment(slot);
+        int offset = (slot % vectorsPerSegment) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += segment.get(offset + i) * query[i];
+        }
+        return sum;
+    }
+
+    void force() {
+        for (MappedByteBuffer mapping : mappings) {
+            mapping.force();
+        }
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private FloatBuffer segment(int slot) {
+        if (slot < 0 || slot >= count) {
+            throw new IndexOutOfBoundsException("No vector in slot " + slot);
+        }
+        return segments.get(slot / vectorsPerSegment);
+    }
+
+    private void map(int segment) throws IOException {
+        long position = HEADER_BYTES + (long) segment * vectorsPerSegment * dimensions * Float.BYTES;
+        long size = (long) vectorsPerSegment * dimensions * Float.BYTES;
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        mappings.add(mapping);
+        segments.add(mapping.asFloatBuffer());
+    }
+}
@@ -0,0 +1,105 @@
+package ai.com.example;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates Spring AI filter expressions against chunk metadata for the stores that search in-process
+ */
+public final class MetadataFilters {
+
+    private MetadataFilters() {
+    }
+
+    /**
+     * Predicate for a filter expression such as {@code source == 'uploaded'}; blank matches everything
+     */
+    public static Predicate<Map<String, Object>> parse(String filterExpression) {
+        if (filterExpression == null || filterExpression.isBlank()) {
+            return metadata -> true;
+        }
+        return of(new FilterExpressionTextParser().parse(filterExpression));
+    }
+
+    public static Predicate<Map<String, Object>> of(Filter.Expression expression) {
+        if (expression == null) {
+            return metadata -> true;
+        }
+        return metadata -> matches(expression, metadata);
+    }
+
+    public static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        return switch (expression.type()) {
+            case AND -> test(expression.left(), metadata) && test(expression.right(), metadata);
+            case OR -> test(expression.left(), metadata) || test(expression.right(), metadata);
+            case NOT -> !test(expression.left(), metadata);
+            case EQ -> equal(value(expression, metadata), operand(expression));
+            case NE -> !equal(value(expression, metadata), operand(expression));
+            case GT -> compare(expression, metadata, order -> order > 0);
+            case GTE -> compare(expression, metadata, order -> order >= 0);
+            case LT -> compare(expression, metadata, order -> order < 0);
+            case LTE -> compare(expression, metadata, order -> order <= 0);
+            case IN -> contains(operand(expression), value(expression, metadata));
+            case NIN -> !contains(operand(expression), value(expression, metadata));
+        };
+    }
+
+    private static boolean test(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return matches(expression, metadata);
+        }
+        throw new IllegalArgumentException("Expected a filter expression but got " + operand);
+    }
+
+    private static Object value(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("Expected a metadata key on the left of " + expression.type());
+        }
+        // The text parser keeps quotes around keys that need them
+        String name = key.key().replaceAll("^[\"']|[\"']$", "");
+        return metadata.get(name);
+    }
+
+    private static Object operand(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Expected a value on the right of " + expression.type());
+        }
+        return value.value();
+    }
+
+    private static boolean equal(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+        return actual != null && expected != null && Objects.equals(actual.toString(), expected.toString());
+    }
+
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata, IntPredicate accept) {
+        Object actual = value(expression, metadata);
+        Object expected = operand(expression);
+        if (actual == null || expected == null) {
+            // Missing values never satisfy a range condition
+            return false;
+        }
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return accept.test(Double.compare(a.doubleValue(), b.doubleValue()));
+        }
+        return accept.test(actual.toString().compareTo(expected.toString()));
+    }
+
+    private static boolean contains(Object values, Object actual) {
+        if (values instanceof Collection<?> collection) {
+            return collection.stream().anyMatch(expected -> equal(actual, expected));
+        }
+        return equal(actual, values);
+    }
+}
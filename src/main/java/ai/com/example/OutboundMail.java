@@ -0,0 +1,58 @@
+package ai.com.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One message in the outbound mail queue. It stays {@code QUEUED} until it is sent, or until it has
+ * failed as often as the queue allows. Times are epoch milliseconds, {@code sentAt} is {@code null}
+ * until the message is sent.
+ */
+public record OutboundMail(String id,
+                           String to,
+                           String subject,
+                           String body,
+                           Status status,
+                           int attempts,
+                           long createdAt,
+                           long nextAttemptAt,
+                           Long sentAt,
+                           String lastError) {
+
+    public enum Status { QUEUED, SENT, FAILED }
+
+    public static OutboundMail queued(String id, String to, String subject, String body, long now) {
+        return new OutboundMail(id, to, subject, body, Status.QUEUED, 0, now, now, null, null);
+    }
+
+    public OutboundMail sent(long now) {
+        return new OutboundMail(id, to, subject, body, Status.SENT, attempts + 1, createdAt, nextAttemptAt, now, lastError);
+    }
+
+    public OutboundMail retryAt(long nextAttemptAt, String error) {
+        return new OutboundMail(id, to, subject, body, Status.QUEUED, attempts + 1, createdAt, nextAttemptAt, null, error);
+    }
+
+    public OutboundMail failed(String error) {
+        return new OutboundMail(id, to, subject, body, Status.FAILED, attempts + 1, createdAt, nextAttemptAt, null, error);
+    }
+
+    /**
+     * Status without the message body, for the status endpoint
+     */
+    public Map<String, Object> toSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("id", id);
+        summary.put("to", to);
+        summary.put("subject", subject);
+        summary.put("status", status);
+        summary.put("attempts", attempts);
+        summary.put("createdAt", createdAt);
+        summary.put("nextAttemptAt", status == Status.QUEUED ? nextAttemptAt : null);
+        summary.put("sentAt", sentAt);
+        if (lastError != null) {
+            summary.put("lastError", lastError);
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,317 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replaces Spring AI's sequential tool execution. The tool calls the model asks for in one turn run
+ * concurrently, each with its own timeout ({@code tools.timeout}, overridable per tool with
+ * {@code tools.timeout.<tool name>}). A tool that times out answers the model with an error message.
+ * <p>
+ * Only tools listed in {@code tools.cache.idempotent} are cached, by tool name and arguments and for
+ * {@code tools.cache.ttl}. Within one turn, repeated identical calls to those tools run once. Tools with side
+ * effects, such as {@code sendEmailFunction}, must never be on that list: every call the model makes is
+ * executed.
+ */
+@Slf4j
+@Component
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager definitions;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor exceptionProcessor;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    private final Duration defaultTimeout;
+    private final Set<String> idempotentTools;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final ExecutorService executor;
+
+    private final LinkedHashMap<String, CachedResult> cache;
+    private final ReentrantLock cacheLock = new ReentrantLock();
+
+    public ParallelToolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor exceptionProcessor,
+                                      Environment environment,
+                                      MeterRegistry meterRegistry,
+                                      ObjectMapper objectMapper,
+                                      @Value("${tools.timeout:10s}") Duration defaultTimeout,
+                                      @Value("${tools.cache.idempotent:getWeatherFunction}") Set<String> idempotentTools,
+                                      @Value("${tools.cache.ttl:5m}") Duration ttl,
+                                      @Value("${tools.cache.max-entries:1000}") int maxEntries) {
+        this.definitions = ToolCallingManager.builder()
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(exceptionProcessor)
+                .build();
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.exceptionProcessor = exceptionProcessor;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+        this.defaultTimeout = defaultTimeout;
+        this.idempotentTools = idempotentTools;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tool-call-", 1).factory());
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > ParallelToolCallingManager.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return definitions.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(message -> message.getToolCalls() != null && !message.getToolCalls().isEmpty())
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        ToolContext toolContext = toolContext(prompt, assistantMessage);
+
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<PendingCall> pending = new ArrayList<>(toolCalls.size());
+        Map<String, Future<String>> sameTurn = new HashMap<>();
+        boolean returnDirect = true;
+        long start = System.nanoTime();
+
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            FunctionCallback callback = callback(prompt, toolCall.name());
+            returnDirect &= callback instanceof ToolCallback tool && tool.getToolMetadata().returnDirect();
+
+            String cacheKey = idempotentTools.contains(toolCall.name()) ? cacheKey(toolCall) : null;
+            String cached = cacheKey != null ? cached(cacheKey) : null;
+            if (cached != null) {
+                pending.add(new PendingCall(toolCall, null, cached, null));
+                continue;
+            }
+            Future<String> future = cacheKey != null ? sameTurn.get(cacheKey) : null;
+            if (future == null) {
+                future = executor.submit(() -> call(callback, toolCall, toolContext));
+                if (cacheKey != null) {
+                    sameTurn.put(cacheKey, future);
+                }
+            }
+            pending.add(new PendingCall(toolCall, future, null, cacheKey));
+        }
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(pending.size());
+        try {
+            for (PendingCall call : pending) {
+                String result = call.cached() != null ? call.cached() : await(call, start);
+                responses.add(new ToolResponseMessage.ToolResponse(call.toolCall().id(), call.toolCall().name(), result));
+            }
+        } catch (RuntimeException e) {
+            // A failing tool fails the turn, as in sequential execution; the other calls are not needed anymore
+            pending.stream().filter(call -> call.future() != null).forEach(call -> call.future().cancel(true));
+            throw e;
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private String call(FunctionCallback callback, AssistantMessage.ToolCall toolCall, ToolContext toolContext) {
+        long started = System.nanoTime();
+        String outcome = "success";
+        try {
+            return callback.call(toolCall.arguments(), toolContext);
+        } catch (ToolExecutionException e) {
+            outcome = "error";
+            return exceptionProcessor.process(e);
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            latency(toolCall.name(), outcome).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Wait for one call until its own timeout, counted from the start of the turn since all calls run at once
+     */
+    private String await(PendingCall call, long turnStart) {
+        String tool = call.toolCall().name();
+        Duration timeout = environment.getProperty("tools.timeout." + tool, Duration.class, defaultTimeout);
+        long remaining = timeout.toNanos() - (System.nanoTime() - turnStart);
+        try {
+            String result = call.future().get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            if (call.cacheKey() != null && !isError(result)) {
+                store(call.cacheKey(), result);
+            }
+            return result;
+        } catch (TimeoutException e) {
+            call.future().cancel(true);
+            latency(tool, "timeout").record(timeout);
+            log.warn("Tool {} did not answer within {}", tool, timeout);
+            return timedOut(tool, timeout);
+        } catch (CancellationException e) {
+            // An identical call earlier in this turn shares the future and cancelled it when it timed out
+            return timedOut(tool, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool " + tool, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Tool " + tool + " failed", e.getCause());
+        }
+    }
+
+    private static String timedOut(String tool, Duration timeout) {
+        return "Error: " + tool + " did not answer within " + timeout.toSeconds() + " seconds, try again later";
+    }
+
+    private FunctionCallback callback(Prompt prompt, String toolName) {
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options && options.getToolCallbacks() != null) {
+            for (FunctionCallback callback : options.getToolCallbacks()) {
+                if (toolName.equals(callback.getName())) {
+                    return callback;
+                }
+            }
+        }
+        FunctionCallback callback = toolCallbackResolver.resolve(toolName);
+        if (callback == null) {
+            throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+        }
+        return callback;
+    }
+
+    private ToolContext toolContext(Prompt prompt, AssistantMessage assistantMessage) {
+        if (!(prompt.getOptions() instanceof ToolCallingChatOptions options)
+                || options.getToolContext() == null || options.getToolContext().isEmpty()) {
+            return new ToolContext(Map.of());
+        }
+        Map<String, Object> context = new HashMap<>(options.getToolContext());
+        List<Message> history = new ArrayList<>(prompt.getInstructions());
+        history.add(assistantMessage);
+        context.put(ToolContext.TOOL_CALL_HISTORY, history);
+        return new ToolContext(context);
+    }
+
+    /**
+     * Tool name and arguments re-serialized, so formatting differences in the model's JSON share an entry
+     */
+    private String cacheKey(AssistantMessage.ToolCall toolCall) {
+        String arguments;
+        try {
+            arguments = objectMapper.readTree(toolCall.arguments()).toString();
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            arguments = String.valueOf(toolCall.arguments());
+        }
+        return toolCall.name() + '\u0000' + arguments;
+    }
+
+    /**
+     * The tools here answer with a {@code status} field; an "Error" answer is worth retrying, not caching
+     */
+    private boolean isError(String result) {
+        try {
+            return "Error".equals(objectMapper.readTree(result).path("status").asText());
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private String cached(String key) {
+        cacheLock.lock();
+        try {
+            CachedResult entry = cache.get(key);
+            if (entry == null || entry.expiresAt() < System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            cacheHit(key.substring(0, key.indexOf('\u0000'))).increment();
+            return entry.result();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private void store(String key, String result) {
+        cacheLock.lock();
+        try {
+            cache.put(key, new CachedResult(result, System.currentTimeMillis() + ttl.toMillis()));
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private Timer latency(String tool, String outcome) {
+        return Timer.builder("tools.latency")
+                .description("Tool call latency by tool and outcome")
+                .tag("tool", tool)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Counter cacheHit(String tool) {
+        return Counter.builder("tools.cache.hits")
+                .description("Tool calls answered from the tool result cache")
+                .tag("tool", tool)
+                .register(meterRegistry);
+    }
+
+    private record PendingCall(AssistantMessage.ToolCall toolCall, Future<String> future, String cached, String cacheKey) {}
+
+    private record CachedResult(String result, long expiresAt) {}
+}
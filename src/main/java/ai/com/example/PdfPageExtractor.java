@@ -0,0 +1,129 @@
+package ai.com.example;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Extracts a PDF one page per document, like Spring AI's paged PDF reader, but without holding the whole
+ * file or all of its text in memory.
+ * <p>
+ * Pages are read in windows of {@code parallelism * pages-per-task} pages. Each window is split into
+ * page ranges on a fork-join pool. Every range opens the file on its own, because a PDFBox document is not
+ * thread-safe, and the file is read from disk on demand. A finished window is handed to the caller in page
+ * order before the next window starts, so memory use depends on the window size, not the document size.
+ */
+@Slf4j
+@Component
+public class PdfPageExtractor {
+
+    public static final String PAGE_NUMBER = "page_number";
+
+    private final int pagesPerTask;
+    private final ForkJoinPool pool;
+
+    public PdfPageExtractor(@Value("${ingestion.pdf.parallelism:4}") int parallelism,
+                            @Value("${ingestion.pdf.pages-per-task:8}") int pagesPerTask) {
+        this.pagesPerTask = pagesPerTask;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ingest-pdf-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Stream the non-blank pages of the file to {@code pages}, one window at a time and in page order.
+     * Every page document carries the given metadata plus its {@value #PAGE_NUMBER}.
+     *
+     * @return the number of pages in the file
+     */
+    public int extract(Path file, Map<String, Object> metadata, Consumer<List<Document>> pages) {
+        int pageCount;
+        try (PDDocument document = Loader.loadPDF(file.toFile())) {
+            pageCount = document.getNumberOfPages();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open PDF " + file.getFileName(), e);
+        }
+
+        int window = pagesPerTask * pool.getParallelism();
+        for (int first = 1; first <= pageCount; first += window) {
+            int last = Math.min(pageCount, first + window - 1);
+            pages.accept(pool.invoke(new PageRange(file, metadata, first, last)));
+        }
+        log.debug("Extracted {} pages from {} in windows of {}", pageCount, file.getFileName(), window);
+        return pageCount;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private final class PageRange extends RecursiveTask<List<Document>> {
+
+        private final Path file;
+        private final Map<String, Object> metadata;
+        private final int first;
+        private final int last;
+
+        PageRange(Path file, Map<String, Object> metadata, int first, int last) {
+            this.file = file;
+            this.metadata = metadata;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected List<Document> compute() {
+            if (last - first < pagesPerTask) {
+                return extractPages();
+            }
+            int middle = (first + last) >>> 1;
+            PageRange head = new PageRange(file, metadata, first, middle);
+            PageRange tail = new PageRange(file, metadata, middle + 1, last);
+            tail.fork();
+            List<Document> pages = head.compute();
+            pages.addAll(tail.join());
+            return pages;
+        }
+
+        private List<Document> extractPages() {
+            List<Document> pages = new ArrayList<>(last - first + 1);
+            try (PDDocument document = Loader.loadPDF(file.toFile())) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int page = first; page <= last; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    String text = stripper.getText(document);
+                    if (text.isBlank()) {
+                        continue;
+                    }
+                    Map<String, Object> pageMetadata = new HashMap<>(metadata);
+                    pageMetadata.put(PAGE_NUMBER, page);
+                    pages.add(Document.builder().text(text).metadata(pageMetadata).build());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not extract pages " + first + "-" + last + " of " + file.getFileName(), e);
+            }
+            return pages;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ai.com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact heap copy of normalized vectors used for the first, approximate phase of a search.
+ * <p>
+ * INT8 keeps one signed byte per dimension plus a per-vector scale (4x smaller than float32), BINARY keeps
+ * only the sign of each dimension packed into longs (32x smaller). Both are scored against the unquantized
+ * query, which ranks far better than comparing codes with codes. The full-precision vectors stay in the
+ * memory-mapped file and are only read to re-rank the best candidates.
+ */
+final class QuantizedVectors {
+
+    enum Mode {
+        NONE(1), INT8(4), BINARY(10);
+
+        /**
+         * How many times top K candidates to re-rank with full vectors when none is configured: int8 codes keep
+         * the ranking nearly intact, sign bits lose most of it
+         */
+        final int defaultRerankFactor;
+
+        Mode(int defaultRerankFactor) {
+            this.defaultRerankFactor = defaultRerankFactor;
+        }
+    }
+
+    private final Mode mode;
+    private final int dimensions;
+    private final int words;
+    private final List<byte[]> codes = new ArrayList<>();
+    private final List<long[]> signs = new ArrayList<>();
+    private float[] scales = new float[1024];
+    private int count;
+
+    QuantizedVectors(Mode mode, int dimensions) {
+        if (mode == Mode.NONE) {
+            throw new IllegalArgumentException("Quantization mode NONE keeps no quantized vectors");
+        }
+        this.mode = mode;
+        this.dimensions = dimensions;
+        this.words = (dimensions + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Append the quantized form of a normalized vector, node ids follow the order of calls
+     */
+    void add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        if (mode == Mode.INT8) {
+            float max = 0;
+            for (float value : vector) {
+                max = Math.max(max, Math.abs(value));
+            }
+            float scale = max > 0 ? max / 127f : 1f;
+            byte[] code = new byte[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                code[i] = (byte) Math.round(vector[i] / scale);
+            }
+            if (count == scales.length) {
+                scales = Arrays.copyOf(scales, count * 2);
+            }
+            scales[count] = scale;
+            codes.add(code);
+        } else {
+            signs.add(signBits(vector));
+        }
+        count++;
+    }
+
+    /**
+     * Approximate similarity of every stored vector to the query: the dot product of the query with the
+     * dequantized INT8 vector, or with the vector of signs scaled to unit length for BINARY
+     */
+    HnswIndex.Scorer scorer(float[] query) {
+        if (mode == Mode.INT8) {
+            return node -> {
+                byte[] code = codes.get(node);
+                float sum = 0;
+                for (int i = 0; i < dimensions; i++) {
+                    sum += code[i] * query[i];
+                }
+                return sum * scales[node];
+            };
+        }
+        return node -> {
+            long[] bits = signs.get(node);
+            float sum = 0;
+            for (int i = 0; i < dimensions; i++) {
+                float value = query[i];
+                sum += (bits[i / Long.SIZE] & 1L << (i % Long.SIZE)) != 0 ? value : -value;
+            }
+            return sum / (float) Math.sqrt(dimensions);
+        };
+    }
+
+    /**
+     * Approximate heap footprint of the codes, for logging
+     */
+    long bytes() {
+        return mode == Mode.INT8
+                ? (long) count * (dimensions + Float.BYTES)
+                : (long) count * words * Long.BYTES;
+    }
+
+    private long[] signBits(float[] vector) {
+        long[] bits = new long[words];
+        for (int i = 0; i < dimensions; i++) {
+            if (vector[i] > 0) {
+                bits[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+            }
+        }
+        return bits;
+    }
+}
@@ -1,19 +1,26 @@
 package ai.com.example;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.chroma.vectorstore.ChromaApi;
 import org.springframework.ai.chroma.vectorstore.ChromaVectorStore;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.Resource;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 
 @Slf4j
 @Configuration
@@ -49,9 +56,41 @@ public class RagConfiguration {
     } */
 
 
+    /**
+     * Embedding model used by the vector store: the Ollama model behind a persistent cache,
+     * with cache misses coalesced into bounded batches from all concurrent writers
+     */
     @Bean
-    ChromaVectorStore chromaVectorStore(EmbeddingModel embeddingModel) throws IOException {
-        ChromaApi chromaApi = new ChromaApi("http://localhost:8000");
+    @Primary
+    EmbeddingModel ragEmbeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel,
+                                     EmbeddingCache embeddingCache,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${spring.ai.ollama.embedding.options.model:mxbai-embed-large}") String modelName,
+                                     @Value("${embedding.batch.max-size:32}") int maxBatchSize,
+                                     @Value("${embedding.batch.max-tokens:8000}") int maxBatchTokens,
+                                     @Value("${embedding.batch.concurrency:2}") int concurrency,
+                                     @Value("${embedding.batch.linger:20ms}") Duration linger) {
+        BatchingEmbeddingModel batching = new BatchingEmbeddingModel(
+                ollamaEmbeddingModel, maxBatchSize, maxBatchTokens, concurrency, linger, meterRegistry);
+        return new CachingEmbeddingModel(batching, embeddingCache, modelName, meterRegistry);
+    }
+
+    @Bean
+    EmbeddingCache embeddingCache(@Value("${embedding.cache.file:data/embedding-cache.bin}") String file,
+                                  @Value("${embedding.cache.max-entries:50000}") int maxEntries) throws IOException {
+        return new EmbeddingCache(Paths.get(file), maxEntries);
+    }
+
+
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "chroma", matchIfMissing = true)
+    ChromaApi chromaApi(@Value("${chroma.db.url:http://localhost:8000}") String chromaUrl) {
+        return new ChromaApi(chromaUrl);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "chroma", matchIfMissing = true)
+    ChromaVectorStore chromaVectorStore(ChromaApi chromaApi, EmbeddingModel embeddingModel) throws IOException {
 
         // Initialize ChromaVectorStore with builder pattern and proper configuration
       return ChromaVectorStore.builder(chromaApi, embeddingModel)
@@ -84,6 +123,55 @@ public class RagConfiguration {
     }
 
 
+    /**
+     * Embedded alternative to Chroma, selected with {@code spring.ai.vectorstore.type=hnsw}
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+    HnswVectorStore hnswVectorStore(EmbeddingModel embeddingModel,
+                                    ObjectMapper objectMapper,
+                                    @Value("${vectorstore.hnsw.dir:data/hnsw}") String directory,
+                                    @Value("${vectorstore.hnsw.m:16}") int m,
+                                    @Value("${vectorstore.hnsw.ef-construction:100}") int efConstruction,
+                                    @Value("${vectorstore.hnsw.ef-search:64}") int efSearch,
+                                    @Value("${vectorstore.hnsw.flush-interval:10s}") Duration flushInterval,
+                                    @Value("${vectorstore.hnsw.quantization:NONE}") QuantizedVectors.Mode quantization,
+                                    @Value("${vectorstore.hnsw.rerank-factor:0}") int rerankFactor,
+                                    @Value("${vectorstore.hnsw.compaction-threshold:0.25}") double compactionThreshold) throws IOException {
+        return new HnswVectorStore(embeddingModel, objectMapper, Paths.get(directory), m, efConstruction, efSearch, flushInterval,
+                quantization, rerankFactor, compactionThreshold);
+    }
+
+
+    /**
+     * Store over a binary snapshot, selected with {@code spring.ai.vectorstore.type=snapshot}. A missing snapshot
+     * is converted from the SimpleVectorStore JSON file if there is one, and changes made since the last start
+     * are merged into it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "snapshot")
+    SnapshotVectorStore snapshotVectorStore(EmbeddingModel embeddingModel,
+                                            ObjectMapper objectMapper,
+                                            @Value("${vectorstore.snapshot.file:data/vectorstore.snap}") String file,
+                                            @Value("${vectorstore.snapshot.import-json:}") String importJson,
+                                            @Value("${vectorstore.snapshot.encoding:FLOAT32}") VectorSnapshot.Encoding encoding) throws IOException {
+        Path snapshot = Paths.get(file);
+        if (!Files.exists(snapshot)) {
+            Path json = importJson.isBlank() ? getVectorStoreFile().toPath() : Paths.get(importJson);
+            if (Files.exists(json)) {
+                int converted = VectorSnapshotConverter.convert(json, snapshot, encoding, objectMapper);
+                log.info("Converted {} documents from {} into vector snapshot {}", converted, json, snapshot);
+            } else {
+                log.info("No vector snapshot at {}, starting with an empty one", snapshot);
+                try (VectorSnapshot.Writer writer = new VectorSnapshot.Writer(snapshot, encoding)) {
+                    writer.finish();
+                }
+            }
+        }
+        return new SnapshotVectorStore(embeddingModel, objectMapper, snapshot);
+    }
+
+
     private File getVectorStoreFile() {
         Path path = Paths.get("src", "main", "resources", "data");
         String absolutePath = path.toFile().getAbsolutePath() + "/" + vectorStoreName;
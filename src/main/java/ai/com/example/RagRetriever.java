@@ -0,0 +1,206 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The one retrieval stage behind the RAG endpoints: embed the question, then search the vector store
+ * with the configured topK, similarity threshold and an optional metadata filter.
+ * <p>
+ * The question is embedded once and the vector is handed to the store's {@link VectorSearch}, so the two
+ * phases are timed separately and the store never embeds the question again. Query embeddings are not
+ * cached, the embedding cache holds chunk embeddings only.
+ * <p>
+ * In hybrid mode the vector search runs next to a BM25 search of the {@link LexicalIndex} and both
+ * rankings are merged with reciprocal rank fusion. If the vector store fails or does not answer within
+ * its timeout, the lexical results are used on their own.
+ * <p>
+ * When a {@link Reranker} is configured the search returns a wider candidate set, which the
+ * {@link RerankStage} narrows down to topK.
+ */
+@Slf4j
+@Component
+public class RagRetriever {
+
+    private final VectorSearch vectorSearch;
+    private final EmbeddingModel embeddingModel;
+    private final LexicalIndex lexicalIndex;
+    private final RerankStage rerankStage;
+    private final int topK;
+    private final double similarityThreshold;
+    private final boolean hybrid;
+    private final int hybridCandidates;
+    private final int rrfK;
+    private final Duration vectorTimeout;
+    private final ExecutorService vectorSearchExecutor;
+
+    private final Timer embedLatency;
+    private final Timer searchLatency;
+    private final Timer lexicalLatency;
+    private final Counter vectorFallbacks;
+
+    public RagRetriever(VectorSearch vectorSearch,
+                        EmbeddingModel embeddingModel,
+                        LexicalIndex lexicalIndex,
+                        RerankStage rerankStage,
+                        MeterRegistry meterRegistry,
+                        @Value("${rag.retrieval.top-k:2}") int topK,
+                        @Value("${rag.retrieval.similarity-threshold:0.0}") double similarityThreshold,
+                        @Value("${rag.hybrid.enabled:true}") boolean hybrid,
+                        @Value("${rag.hybrid.candidates:10}") int hybridCandidates,
+                        @Value("${rag.hybrid.rrf-k:60}") int rrfK,
+                        @Value("${rag.hybrid.vector-timeout:2s}") Duration vectorTimeout) {
+        this.vectorSearch = vectorSearch;
+        this.embeddingModel = embeddingModel;
+        this.lexicalIndex = lexicalIndex;
+        this.rerankStage = rerankStage;
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+        this.hybrid = hybrid;
+        this.hybridCandidates = hybridCandidates;
+        this.rrfK = rrfK;
+        this.vectorTimeout = vectorTimeout;
+
+        // The search only waits on the vector store, a virtual thread per search costs next to nothing
+        this.vectorSearchExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-vector-search-", 1).factory());
+
+        this.embedLatency = phaseTimer("embed", meterRegistry);
+        this.searchLatency = phaseTimer("search", meterRegistry);
+        this.lexicalLatency = phaseTimer("lexical", meterRegistry);
+        this.vectorFallbacks = Counter.builder("rag.hybrid.vector-fallbacks")
+                .description("Searches answered from the lexical index alone because the vector store failed or was late")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Timer for one phase of answering a question, all phases share the {@code rag.latency} name
+     */
+    static Timer phaseTimer(String phase, MeterRegistry meterRegistry) {
+        return Timer.builder("rag.latency")
+                .description("Time spent in one phase of answering a question")
+                .tag("phase", phase)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    public float[] embed(String query) {
+        long start = System.nanoTime();
+        try {
+            return embeddingModel.embed(query);
+        } finally {
+            embedLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Search for chunks similar to the query
+     *
+     * @param queryEmbedding   the query's embedding from {@link #embed}
+     * @param filterExpression metadata filter such as {@code source == 'uploaded'}, or blank for none
+     */
+    public List<Document> search(String query, float[] queryEmbedding, String filterExpression) {
+        int limit = rerankStage.candidates(topK);
+        long start = System.nanoTime();
+        List<Document> candidates;
+        try {
+            candidates = hybrid
+                    ? hybridSearch(query, queryEmbedding, filterExpression, limit)
+                    : vectorSearch(query, queryEmbedding, filterExpression, limit);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            searchLatency.record(elapsed, TimeUnit.NANOSECONDS);
+            log.debug("Retrieved chunks for '{}' in {} ms", query, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        return rerankStage.rerank(query, candidates, topK);
+    }
+
+    public List<Document> retrieve(String query, String filterExpression) {
+        return search(query, embed(query), filterExpression);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        vectorSearchExecutor.shutdownNow();
+    }
+
+    private List<Document> vectorSearch(String query, float[] queryEmbedding, String filterExpression, int limit) {
+        SearchRequest.Builder request = SearchRequest.builder()
+                .query(query)
+                .topK(limit)
+                .similarityThreshold(similarityThreshold);
+        if (filterExpression != null && !filterExpression.isBlank()) {
+            request.filterExpression(filterExpression);
+        }
+        List<Document> documents = vectorSearch.similaritySearch(request.build(), queryEmbedding);
+        return documents != null ? documents : List.of();
+    }
+
+    private List<Document> hybridSearch(String query, float[] queryEmbedding, String filterExpression, int limit) {
+        int perList = Math.max(hybridCandidates, limit);
+        CompletableFuture<List<Document>> vectorResults = CompletableFuture.supplyAsync(
+                () -> vectorSearch(query, queryEmbedding, filterExpression, perList), vectorSearchExecutor);
+
+        long start = System.nanoTime();
+        List<Document> lexicalResults = lexicalIndex.search(query, perList, MetadataFilters.parse(filterExpression));
+        lexicalLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        List<Document> vectorDocuments;
+        try {
+            vectorDocuments = vectorResults.get(vectorTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            vectorResults.cancel(true);
+            vectorFallbacks.increment();
+            log.warn("Vector search for '{}' took longer than {}, answering from the lexical index", query, vectorTimeout);
+            return lexicalResults.subList(0, Math.min(limit, lexicalResults.size()));
+        } catch (ExecutionException e) {
+            vectorFallbacks.increment();
+            log.warn("Vector search for '{}' failed, answering from the lexical index: {}", query, e.getCause().getMessage());
+            return lexicalResults.subList(0, Math.min(limit, lexicalResults.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the vector search", e);
+        }
+        return fuse(vectorDocuments, lexicalResults, limit);
+    }
+
+    /**
+     * Reciprocal rank fusion: every list contributes 1 / (k + rank) for each document it contains
+     */
+    private List<Document> fuse(List<Document> vectorResults, List<Document> lexicalResults, int limit) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<Document> ranking : List.of(vectorResults, lexicalResults)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                // The vector store's copy wins, it was seen first
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+
+        List<String> ranked = new ArrayList<>(scores.keySet());
+        ranked.sort(Comparator.comparing(scores::get, Comparator.reverseOrder()));
+        return ranked.stream().limit(limit).map(documents::get).toList();
+    }
+}
@@ -0,0 +1,173 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Optional second retrieval stage: the search fetches a wider candidate set, every candidate is scored by the
+ * configured {@link Reranker} in parallel, and the best topK are kept.
+ * <p>
+ * Scoring has a hard budget per request. If any candidate is not scored in time, or a scorer fails, the
+ * candidates keep the order the search returned them in, so a slow scorer costs at most the budget.
+ * <p>
+ * The original rank of every chunk that survives re-ranking is recorded, which shows how deep the candidate
+ * set has to be: if the kept chunks almost always come from the first few places, fewer candidates will do.
+ */
+@Slf4j
+@Component
+public class RerankStage {
+
+    private final Reranker reranker;
+    private final int candidates;
+    private final Duration budget;
+    private final ExecutorService executor;
+
+    private final Timer latency;
+    private final Counter timeouts;
+    private final Counter failures;
+    private final Counter promoted;
+    private final DistributionSummary selectedRank;
+
+    public RerankStage(Optional<Reranker> reranker,
+                       MeterRegistry meterRegistry,
+                       @Value("${rag.rerank.candidates:20}") int candidates,
+                       @Value("${rag.rerank.budget:1500ms}") Duration budget,
+                       @Value("${rag.rerank.parallelism:8}") int parallelism) {
+        this.reranker = reranker.orElse(null);
+        this.candidates = candidates;
+        this.budget = budget;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "rag-rerank-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.latency = RagRetriever.phaseTimer("rerank", meterRegistry);
+        this.timeouts = fallbackCounter("timeout", meterRegistry);
+        this.failures = fallbackCounter("error", meterRegistry);
+        this.promoted = Counter.builder("rag.rerank.promoted")
+                .description("Chunks kept after re-ranking that the search alone would have ranked below topK")
+                .register(meterRegistry);
+        this.selectedRank = DistributionSummary.builder("rag.rerank.selected-rank")
+                .description("Search rank (1-based) of the chunks kept after re-ranking")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        if (this.reranker != null) {
+            log.info("Re-ranking {} candidates with {} within {}", candidates, this.reranker.getClass().getSimpleName(), budget);
+        }
+    }
+
+    public boolean isEnabled() {
+        return reranker != null;
+    }
+
+    /**
+     * How many chunks the search should return for this stage to choose topK from
+     */
+    public int candidates(int topK) {
+        return isEnabled() ? Math.max(Math.min(candidates, reranker.maxCandidates()), topK) : topK;
+    }
+
+    /**
+     * The topK best candidates by re-ranking score, or the first topK in search order when scoring
+     * is disabled, late or failed
+     */
+    public List<Document> rerank(String query, List<Document> searchResults, int topK) {
+        if (!isEnabled() || searchResults.size() <= 1) {
+            return limit(searchResults, topK);
+        }
+        // Never rate more than the scorer allows, whatever the search returned
+        searchResults = limit(searchResults, candidates(topK));
+
+        long start = System.nanoTime();
+        List<Callable<Double>> tasks = searchResults.stream()
+                .<Callable<Double>>map(candidate -> () -> reranker.score(query, candidate))
+                .toList();
+        try {
+            // Tasks still running when the budget is spent are cancelled by invokeAll
+            List<Future<Double>> futures = executor.invokeAll(tasks, budget.toNanos(), TimeUnit.NANOSECONDS);
+            double[] scores = new double[futures.size()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = futures.get(i).get();
+            }
+            return select(searchResults, scores, topK);
+        } catch (CancellationException e) {
+            timeouts.increment();
+            log.warn("Re-ranking {} candidates for '{}' exceeded {}, keeping search order", searchResults.size(), query, budget);
+            return limit(searchResults, topK);
+        } catch (ExecutionException e) {
+            failures.increment();
+            log.warn("Re-ranking for '{}' failed, keeping search order: {}", query, e.getCause().getMessage());
+            return limit(searchResults, topK);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while re-ranking", e);
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private List<Document> select(List<Document> searchResults, double[] scores, int topK) {
+        // Stable sort, equal scores keep the search order
+        List<Integer> ranks = IntStream.range(0, searchResults.size()).boxed()
+                .sorted(Comparator.comparingDouble((Integer rank) -> scores[rank]).reversed())
+                .limit(topK)
+                .toList();
+
+        List<Document> selected = new ArrayList<>(ranks.size());
+        for (int rank : ranks) {
+            selectedRank.record(rank + 1);
+            if (rank >= topK) {
+                promoted.increment();
+            }
+            Document candidate = searchResults.get(rank);
+            selected.add(Document.builder()
+                    .id(candidate.getId())
+                    .text(candidate.getText())
+                    .metadata(candidate.getMetadata())
+                    .score(scores[rank])
+                    .build());
+        }
+        return selected;
+    }
+
+    private static List<Document> limit(List<Document> documents, int topK) {
+        return documents.subList(0, Math.min(topK, documents.size()));
+    }
+
+    private static Counter fallbackCounter(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("rag.rerank.fallbacks")
+                .description("Requests that kept the search order because re-ranking was late or failed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,23 @@
+package ai.com.example;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * Scores how well one retrieved chunk answers a question, used to re-order the candidates of a search.
+ * Implementations are called concurrently for the candidates of one request and must be thread-safe.
+ */
+public interface Reranker {
+
+    /**
+     * Relevance of the candidate to the query, higher is better. Scores only need to be comparable
+     * within one request.
+     */
+    double score(String query, Document candidate);
+
+    /**
+     * The most candidates of one request this scorer should rate, for scorers where every rating is expensive
+     */
+    default int maxCandidates() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,181 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of generated answers looked up by question embedding instead of exact text,
+ * so rephrasings of a question that was already answered skip retrieval and generation.
+ * <p>
+ * Entries expire after a TTL, the least recently used entry is evicted when the cache is full,
+ * and the whole cache is dropped whenever the document corpus changes. An answer whose generation was
+ * still running when the corpus changed is returned but not cached, it may rest on removed documents.
+ */
+@Slf4j
+@Component
+public class SemanticCache {
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final LinkedHashMap<Long, Entry> entries;
+    private long nextId;
+    private long corpusVersion;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer latencySaved;
+
+    public SemanticCache(MeterRegistry meterRegistry,
+                         @Value("${faq.semantic-cache.enabled:true}") boolean enabled,
+                         @Value("${faq.semantic-cache.similarity-threshold:0.95}") double similarityThreshold,
+                         @Value("${faq.semantic-cache.ttl:1h}") Duration ttl,
+                         @Value("${faq.semantic-cache.max-entries:1000}") int maxEntries) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > SemanticCache.this.maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("faq.semantic-cache.hits")
+                .description("Questions answered from the semantic cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("faq.semantic-cache.misses")
+                .description("Questions that needed retrieval and generation")
+                .register(meterRegistry);
+        this.latencySaved = Timer.builder("faq.semantic-cache.latency-saved")
+                .description("Generation time of the original answer, saved by each cache hit")
+                .register(meterRegistry);
+        Gauge.builder("faq.semantic-cache.size", this, SemanticCache::size)
+                .description("Answers held in the semantic cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached answer for a near-duplicate question, or generate, cache and return a new one
+     */
+    public String getOrGenerate(String namespace, String question, float[] questionEmbedding, Supplier<String> generator) {
+        if (!enabled) {
+            return generator.get();
+        }
+
+        float[] normalized = normalize(questionEmbedding);
+        Optional<Entry> cached = lookup(namespace, normalized);
+        if (cached.isPresent()) {
+            hits.increment();
+            latencySaved.record(cached.get().generationNanos(), TimeUnit.NANOSECONDS);
+            log.info("Semantic cache hit for '{}' (cached question '{}')", question, cached.get().question());
+            return cached.get().answer();
+        }
+
+        misses.increment();
+        long version = corpusVersion();
+        long start = System.nanoTime();
+        String answer = generator.get();
+        put(new Entry(namespace, normalized, question, answer, Instant.now(), System.nanoTime() - start), version);
+        return answer;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @EventListener
+    public void onCorpusChanged(CorpusChangedEvent event) {
+        int dropped;
+        synchronized (this) {
+            dropped = entries.size();
+            entries.clear();
+            corpusVersion++;
+        }
+        if (dropped > 0) {
+            log.info("Corpus changed ({}), dropped {} cached answers", event.filename(), dropped);
+        }
+    }
+
+    private synchronized Optional<Entry> lookup(String namespace, float[] normalized) {
+        Instant expiredBefore = Instant.now().minus(ttl);
+        Long bestId = null;
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> candidate = iterator.next();
+            Entry entry = candidate.getValue();
+            if (entry.createdAt().isBefore(expiredBefore)) {
+                iterator.remove();
+                continue;
+            }
+            if (!entry.namespace().equals(namespace) || entry.embedding().length != normalized.length) {
+                continue;
+            }
+            double similarity = dot(entry.embedding(), normalized);
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestId = candidate.getKey();
+                best = entry;
+            }
+        }
+        if (bestId != null) {
+            // Touch the entry so it counts as recently used
+            entries.get(bestId);
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private synchronized long corpusVersion() {
+        return corpusVersion;
+    }
+
+    private synchronized void put(Entry entry, long generatedForVersion) {
+        if (generatedForVersion != corpusVersion) {
+            log.debug("Corpus changed while answering '{}', not caching the answer", entry.question());
+            return;
+        }
+        entries.put(nextId++, entry);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(String namespace, float[] embedding, String question, String answer,
+                         Instant createdAt, long generationNanos) {}
+}
@@ -0,0 +1,376 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Vector store that searches a memory-mapped {@link VectorSnapshot} exactly, scanning ranges of the vector
+ * block in parallel. Opening it costs a few mappings regardless of the corpus size, and chunk metadata is
+ * only decoded for candidates good enough to enter the top K.
+ * <p>
+ * The snapshot file itself never changes while it is open. Added and deleted chunks are kept as a delta, on
+ * the heap and in {@code <snapshot>.delta.json}: searches cover the snapshot minus the deleted chunks plus the
+ * added ones, and the next start merges the delta into a new snapshot. The delta file is rewritten on every
+ * change, so this suits uploads on top of a corpus built elsewhere rather than re-indexing it.
+ */
+@Slf4j
+public class SnapshotVectorStore implements VectorStore, VectorSearch, ChunkStore, AutoCloseable {
+
+    private static final int SCAN_RANGE = 16_384;
+    private static final Comparator<HnswIndex.Neighbor> BY_SIMILARITY = Comparator.comparingDouble(HnswIndex.Neighbor::similarity);
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final Path deltaFile;
+    private final VectorSnapshot snapshot;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BitSet deletedSlots = new BitSet();
+    private final Set<String> deletedIds = new LinkedHashSet<>();
+    private final Map<String, AddedChunk> added = new LinkedHashMap<>();
+    // Built on the first write, searches never need it
+    private Map<String, Integer> slotsById;
+
+    /**
+     * Pending changes to the snapshot, as persisted in the delta file
+     */
+    record Delta(List<String> deletedIds, List<AddedChunk> added) {}
+
+    record AddedChunk(String id, String text, Map<String, Object> metadata, float[] embedding) {}
+
+    public SnapshotVectorStore(EmbeddingModel embeddingModel, ObjectMapper objectMapper, Path file) throws IOException {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.deltaFile = file.resolveSibling(file.getFileName() + ".delta.json");
+        if (Files.exists(deltaFile)) {
+            mergeDelta(file);
+        }
+        long start = System.nanoTime();
+        this.snapshot = VectorSnapshot.open(file);
+        log.info("Vector snapshot {} opened in {} ms: {} chunks, {} dimensions, {}", file,
+                (System.nanoTime() - start) / 1_000_000, snapshot.size(), snapshot.dimensions(), snapshot.encoding());
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // Embed before taking the lock, searches keep running meanwhile
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+                new TokenCountBatchingStrategy());
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                float[] vector = HnswVectorStore.normalize(embeddings.get(i));
+                int dimensions = dimensions();
+                if (dimensions > 0 && vector.length != dimensions) {
+                    throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+                }
+                // An id already in the snapshot is replaced
+                deleteFromSnapshot(document.getId());
+                added.put(document.getId(), new AddedChunk(document.getId(), document.getText(),
+                        new HashMap<>(document.getMetadata()), vector));
+            }
+            writeDelta();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the vector snapshot delta " + deltaFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            for (String id : ids) {
+                changed |= added.remove(id) != null;
+                changed |= deleteFromSnapshot(id);
+            }
+            if (changed) {
+                writeDelta();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the vector snapshot delta " + deltaFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = MetadataFilters.of(filterExpression);
+        List<String> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            liveSlots().filter(slot -> filter.test(snapshot.metadata(slot))).forEach(slot -> ids.add(snapshot.id(slot)));
+            added.values().stream().filter(chunk -> filter.test(chunk.metadata())).forEach(chunk -> ids.add(chunk.id()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (dimensions() == 0) {
+                return List.of();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return similaritySearch(request, embeddingModel.embed(request.getQuery()));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding) {
+        float[] query = HnswVectorStore.normalize(queryEmbedding);
+        Predicate<Map<String, Object>> filter = request.getFilterExpression() != null
+                ? MetadataFilters.of(request.getFilterExpression())
+                : null;
+        int topK = request.getTopK();
+        double threshold = request.getSimilarityThreshold();
+
+        lock.readLock().lock();
+        try {
+            int dimensions = dimensions();
+            if (dimensions == 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException("Query has " + query.length + " dimensions but the snapshot holds "
+                        + dimensions + "-dimensional vectors");
+            }
+
+            List<Document> results = new ArrayList<>();
+            int ranges = (snapshot.size() + SCAN_RANGE - 1) / SCAN_RANGE;
+            IntStream.range(0, ranges)
+                    .parallel()
+                    .mapToObj(range -> scan(range * SCAN_RANGE, Math.min(snapshot.size(), (range + 1) * SCAN_RANGE),
+                            query, topK, threshold, filter))
+                    .flatMap(List::stream)
+                    .sorted(BY_SIMILARITY.reversed())
+                    .limit(topK)
+                    .forEachOrdered(neighbor -> {
+                        VectorSnapshot.Chunk chunk = snapshot.chunk(neighbor.node());
+                        results.add(toDocument(chunk.id(), chunk.text(), chunk.metadata(), neighbor.similarity()));
+                    });
+            for (AddedChunk chunk : added.values()) {
+                float similarity = dot(chunk.embedding(), query);
+                if (similarity >= threshold && (filter == null || filter.test(chunk.metadata()))) {
+                    results.add(toDocument(chunk.id(), chunk.text(), chunk.metadata(), similarity));
+                }
+            }
+            return results.stream()
+                    .sorted(Comparator.comparingDouble(Document::getScore).reversed())
+                    .limit(topK)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> findChunkIds(String filename) {
+        lock.readLock().lock();
+        try {
+            List<String> ids = new ArrayList<>();
+            liveSlots().filter(slot -> filename.equals(snapshot.metadata(slot).get("filename")))
+                    .forEach(slot -> ids.add(snapshot.id(slot)));
+            added.values().stream().filter(chunk -> filename.equals(chunk.metadata().get("filename")))
+                    .forEach(chunk -> ids.add(chunk.id()));
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, List<String>> findChunkIdsByFilename() {
+        lock.readLock().lock();
+        try {
+            Map<String, List<String>> idsByFilename = new HashMap<>();
+            liveSlots().forEach(slot -> {
+                Object filename = snapshot.metadata(slot).get("filename");
+                if (filename != null) {
+                    idsByFilename.computeIfAbsent(filename.toString(), name -> new ArrayList<>()).add(snapshot.id(slot));
+                }
+            });
+            for (AddedChunk chunk : added.values()) {
+                Object filename = chunk.metadata().get("filename");
+                if (filename != null) {
+                    idsByFilename.computeIfAbsent(filename.toString(), name -> new ArrayList<>()).add(chunk.id());
+                }
+            }
+            return idsByFilename;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> findChunks(String filename) {
+        lock.readLock().lock();
+        try {
+            List<Document> chunks = new ArrayList<>();
+            liveSlots().filter(slot -> filename.equals(snapshot.metadata(slot).get("filename"))).forEach(slot -> {
+                VectorSnapshot.Chunk chunk = snapshot.chunk(slot);
+                chunks.add(new Document(chunk.id(), chunk.text(), chunk.metadata()));
+            });
+            added.values().stream().filter(chunk -> filename.equals(chunk.metadata().get("filename")))
+                    .forEach(chunk -> chunks.add(new Document(chunk.id(), chunk.text(), chunk.metadata())));
+            return chunks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshot.close();
+    }
+
+    private List<HnswIndex.Neighbor> scan(int from, int to, float[] query, int topK, double threshold,
+                                          Predicate<Map<String, Object>> filter) {
+        PriorityQueue<HnswIndex.Neighbor> best = new PriorityQueue<>(BY_SIMILARITY);
+        for (int slot = from; slot < to; slot++) {
+            if (deletedSlots.get(slot)) {
+                continue;
+            }
+            float similarity = snapshot.dot(slot, query);
+            if (similarity < threshold || (best.size() >= topK && similarity <= best.peek().similarity())) {
+                continue;
+            }
+            // Metadata is decoded only for chunks that would make it into the top K
+            if (filter != null && !filter.test(snapshot.metadata(slot))) {
+                continue;
+            }
+            best.add(new HnswIndex.Neighbor(slot, similarity));
+            if (best.size() > topK) {
+                best.poll();
+            }
+        }
+        return new ArrayList<>(best);
+    }
+
+    private IntStream liveSlots() {
+        return IntStream.range(0, snapshot.size()).filter(slot -> !deletedSlots.get(slot));
+    }
+
+    /**
+     * The snapshot's dimensions, or those of the added chunks while the snapshot is empty
+     */
+    private int dimensions() {
+        if (snapshot.dimensions() > 0) {
+            return snapshot.dimensions();
+        }
+        return added.isEmpty() ? 0 : added.values().iterator().next().embedding().length;
+    }
+
+    private boolean deleteFromSnapshot(String id) {
+        if (slotsById == null) {
+            long start = System.nanoTime();
+            slotsById = new HashMap<>();
+            for (int slot = 0; slot < snapshot.size(); slot++) {
+                slotsById.put(snapshot.id(slot), slot);
+            }
+            log.debug("Indexed {} snapshot chunk ids in {} ms", slotsById.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        Integer slot = slotsById.get(id);
+        if (slot == null || deletedSlots.get(slot)) {
+            return false;
+        }
+        deletedSlots.set(slot);
+        deletedIds.add(id);
+        return true;
+    }
+
+    private void writeDelta() throws IOException {
+        Path tmp = deltaFile.resolveSibling(deltaFile.getFileName() + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), new Delta(List.copyOf(deletedIds), List.copyOf(added.values())));
+        Files.move(tmp, deltaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Rewrite the snapshot with the delta applied. Added chunks replace snapshot chunks with the same id, so
+     * merging the same delta twice after a crash gives the same snapshot.
+     */
+    private void mergeDelta(Path file) throws IOException {
+        long start = System.nanoTime();
+        Delta delta = objectMapper.readValue(deltaFile.toFile(), Delta.class);
+        Set<String> dropped = new HashSet<>(delta.deletedIds());
+        delta.added().forEach(chunk -> dropped.add(chunk.id()));
+
+        int kept = 0;
+        try (VectorSnapshot current = VectorSnapshot.open(file);
+             VectorSnapshot.Writer writer = new VectorSnapshot.Writer(file, current.encoding())) {
+            for (int slot = 0; slot < current.size(); slot++) {
+                VectorSnapshot.Chunk chunk = current.chunk(slot);
+                if (!dropped.contains(chunk.id())) {
+                    writer.add(chunk, current.vector(slot));
+                    kept++;
+                }
+            }
+            for (AddedChunk chunk : delta.added()) {
+                writer.add(new VectorSnapshot.Chunk(chunk.id(), chunk.text(), chunk.metadata()), chunk.embedding());
+            }
+            writer.finish();
+        }
+        Files.delete(deltaFile);
+        log.info("Merged {} into vector snapshot {} in {} ms: kept {} chunks, added {}", deltaFile, file,
+                (System.nanoTime() - start) / 1_000_000, kept, delta.added().size());
+    }
+
+    private static float dot(float[] vector, float[] query) {
+        float sum = 0;
+        for (int i = 0; i < vector.length; i++) {
+            sum += vector[i] * query[i];
+        }
+        return sum;
+    }
+
+    private static Document toDocument(String id, String text, Map<String, Object> metadata, float similarity) {
+        Map<String, Object> withDistance = new LinkedHashMap<>(metadata);
+        withDistance.put("distance", 1 - similarity);
+        return Document.builder()
+                .id(id)
+                .text(text)
+                .metadata(withDistance)
+                .score((double) similarity)
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package ai.com.example;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.List;
+
+/**
+ * Similarity search on the active vector store with a query embedding the caller already holds, so a
+ * question is embedded once per request and query embeddings never go through the chunk embedding cache
+ */
+public interface VectorSearch {
+
+    /**
+     * Like {@code VectorStore.similaritySearch(request)}, with {@code queryEmbedding} used instead of embedding
+     * {@code request.getQuery()}
+     */
+    List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding);
+}
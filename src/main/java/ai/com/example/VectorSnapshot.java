@@ -0,0 +1,446 @@
+package ai.com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, memory-mapped file of embedded chunks that can be searched without loading it onto the heap.
+ * <p>
+ * Layout, little-endian:
+ * <pre>
+ * header     64 bytes: magic, version, encoding, dimensions, count, reserved,
+ *            then the offsets of the vector block, scale block, document index and document segment
+ * vectors    count x dimensions float32 values, or int8 values scaled per vector
+ * scales     count float32 scales, int8 encoding only
+ * index      count int64 offsets into the document segment
+ * documents  per chunk: id, text and metadata, strings as length-prefixed UTF-8
+ * </pre>
+ * Opening the file maps the vector block and the index; a chunk's text and metadata are decoded only
+ * when that chunk is read.
+ */
+final class VectorSnapshot implements AutoCloseable {
+
+    enum Encoding { FLOAT32, INT8 }
+
+    record Chunk(String id, String text, Map<String, Object> metadata) {}
+
+    private static final int MAGIC = 0x504e5356; // "VSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+
+    private final FileChannel channel;
+    private final Encoding encoding;
+    private final int dimensions;
+    private final int count;
+    private final int vectorsPerSegment;
+    private final List<ByteBuffer> vectorSegments = new ArrayList<>();
+    private final ByteBuffer scales;
+    private final LongBuffer index;
+    private final long documentsOffset;
+
+    private VectorSnapshot(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a vector snapshot");
+        }
+        this.encoding = Encoding.values()[header.getInt(8)];
+        this.dimensions = header.getInt(12);
+        this.count = header.getInt(16);
+        long vectorsOffset = header.getLong(24);
+        long scalesOffset = header.getLong(32);
+        long indexOffset = header.getLong(40);
+        this.documentsOffset = header.getLong(48);
+
+        long vectorBytes = (long) dimensions * bytesPerValue(encoding);
+        if (count == 0 || dimensions == 0) {
+            // An empty snapshot has no vector block and records no dimensions
+            this.vectorsPerSegment = 1;
+        } else {
+            this.vectorsPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES / vectorBytes);
+            for (long first = 0; first < count; first += vectorsPerSegment) {
+                long vectors = Math.min(vectorsPerSegment, count - first);
+                vectorSegments.add(map(vectorsOffset + first * vectorBytes, vectors * vectorBytes));
+            }
+        }
+        this.scales = encoding == Encoding.INT8 ? map(scalesOffset, (long) count * Float.BYTES) : null;
+        this.index = map(indexOffset, (long) count * Long.BYTES).asLongBuffer();
+    }
+
+    static VectorSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new VectorSnapshot(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Encoding encoding() {
+        return encoding;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Dot product of the stored vector with the query, read straight from the mapping
+     */
+    float dot(int slot, float[] query) {
+        ByteBuffer segment = vectorSegments.get(slot / vectorsPerSegment);
+        int offset = (slot % vectorsPerSegment) * dimensions * bytesPerValue(encoding);
+        float sum = 0;
+        if (encoding == Encoding.FLOAT32) {
+            for (int i = 0; i < dimensions; i++) {
+                sum += segment.getFloat(offset + i * Float.BYTES) * query[i];
+            }
+            return sum;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            sum += segment.get(offset + i) * query[i];
+        }
+        return sum * scales.getFloat(slot * Float.BYTES);
+    }
+
+    float[] vector(int slot) {
+        ByteBuffer segment = vectorSegments.get(slot / vectorsPerSegment);
+        int offset = (slot % vectorsPerSegment) * dimensions * bytesPerValue(encoding);
+        float[] vector = new float[dimensions];
+        if (encoding == Encoding.FLOAT32) {
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = segment.getFloat(offset + i * Float.BYTES);
+            }
+            return vector;
+        }
+        float scale = scales.getFloat(slot * Float.BYTES);
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = segment.get(offset + i) * scale;
+        }
+        return vector;
+    }
+
+    Chunk chunk(int slot) {
+        try {
+            ByteBuffer record = read(index.get(slot));
+            return new Chunk(readString(record), readString(record), readMetadata(record));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read chunk " + slot + " of the vector snapshot", e);
+        }
+    }
+
+    /**
+     * Only the id of a chunk, without decoding its text or metadata
+     */
+    String id(int slot) {
+        try {
+            return readString(read(index.get(slot)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read chunk " + slot + " of the vector snapshot", e);
+        }
+    }
+
+    /**
+     * Only the metadata of a chunk, for filtering without decoding its text
+     */
+    Map<String, Object> metadata(int slot) {
+        try {
+            ByteBuffer record = read(index.get(slot));
+            skipString(record);
+            skipString(record);
+            return readMetadata(record);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read chunk " + slot + " of the vector snapshot", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer map(long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Documents are read with positional reads rather than mapped, records may straddle any mapping window
+     */
+    private ByteBuffer read(long offset) throws IOException {
+        long position = documentsOffset + offset;
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(length, position);
+        ByteBuffer record = ByteBuffer.allocate(length.flip().getInt()).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(record, position + Integer.BYTES);
+        return record.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of vector snapshot");
+            }
+        }
+    }
+
+    private static int bytesPerValue(Encoding encoding) {
+        return encoding == Encoding.FLOAT32 ? Float.BYTES : Byte.BYTES;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private static Map<String, Object> readMetadata(ByteBuffer buffer) {
+        int entries = buffer.getInt();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = readString(buffer);
+            byte type = buffer.get();
+            metadata.put(key, switch (type) {
+                case LONG -> buffer.getLong();
+                case DOUBLE -> buffer.getDouble();
+                case BOOLEAN -> buffer.get() != 0;
+                default -> readString(buffer);
+            });
+        }
+        return metadata;
+    }
+
+    /**
+     * Streams chunks into a new snapshot. Vectors and documents go to temporary files as they arrive,
+     * {@link #finish()} joins them behind the header and moves the result into place.
+     */
+    static final class Writer implements AutoCloseable {
+
+        private final Path target;
+        private final Encoding encoding;
+        private final Path vectorTmp;
+        private final Path documentTmp;
+        private final FileChannel vectors;
+        private final FileChannel documents;
+        private int dimensions = -1;
+        private int count;
+        private long documentBytes;
+        private long[] offsets = new long[1024];
+        private float[] scales = new float[1024];
+
+        Writer(Path target, Encoding encoding) throws IOException {
+            this.target = target;
+            this.encoding = encoding;
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            this.vectorTmp = target.resolveSibling(target.getFileName() + ".vectors.tmp");
+            this.documentTmp = target.resolveSibling(target.getFileName() + ".documents.tmp");
+            this.vectors = FileChannel.open(vectorTmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.documents = FileChannel.open(documentTmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Add a chunk; the vector should already be normalized if the snapshot is searched by cosine similarity
+         */
+        void add(Chunk chunk, float[] vector) throws IOException {
+            if (dimensions < 0) {
+                dimensions = vector.length;
+            } else if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                scales = Arrays.copyOf(scales, count * 2);
+            }
+
+            ByteBuffer encoded = ByteBuffer.allocate(vector.length * bytesPerValue(encoding)).order(ByteOrder.LITTLE_ENDIAN);
+            if (encoding == Encoding.FLOAT32) {
+                for (float value : vector) {
+                    encoded.putFloat(value);
+                }
+            } else {
+                float max = 0;
+                for (float value : vector) {
+                    max = Math.max(max, Math.abs(value));
+                }
+                float scale = max > 0 ? max / 127f : 1f;
+                for (float value : vector) {
+                    encoded.put((byte) Math.round(value / scale));
+                }
+                scales[count] = scale;
+            }
+            writeFully(vectors, encoded.flip());
+
+            ByteBuffer record = encode(chunk);
+            offsets[count] = documentBytes;
+            documentBytes += record.remaining();
+            writeFully(documents, record);
+            count++;
+        }
+
+        void finish() throws IOException {
+            vectors.close();
+            documents.close();
+
+            long vectorsOffset = HEADER_BYTES;
+            long vectorBytes = (long) count * Math.max(dimensions, 0) * bytesPerValue(encoding);
+            long scalesOffset = align(vectorsOffset + vectorBytes);
+            long scaleBytes = encoding == Encoding.INT8 ? (long) count * Float.BYTES : 0;
+            long indexOffset = align(scalesOffset + scaleBytes);
+            long documentsOffset = indexOffset + (long) count * Long.BYTES;
+
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(encoding.ordinal()).putInt(Math.max(dimensions, 0))
+                        .putInt(count).putInt(0)
+                        .putLong(vectorsOffset).putLong(scalesOffset).putLong(indexOffset)
+                        .putLong(documentsOffset).putLong(documentBytes);
+                writeFully(out, header.flip());
+
+                transfer(vectorTmp, out, vectorsOffset);
+                if (encoding == Encoding.INT8) {
+                    ByteBuffer scaleBlock = ByteBuffer.allocate((int) scaleBytes).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int i = 0; i < count; i++) {
+                        scaleBlock.putFloat(scales[i]);
+                    }
+                    out.position(scalesOffset);
+                    writeFully(out, scaleBlock.flip());
+                }
+                ByteBuffer indexBlock = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < count; i++) {
+                    indexBlock.putLong(offsets[i]);
+                }
+                out.position(indexOffset);
+                writeFully(out, indexBlock.flip());
+                transfer(documentTmp, out, documentsOffset);
+                out.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(vectorTmp);
+            Files.deleteIfExists(documentTmp);
+        }
+
+        int size() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            vectors.close();
+            documents.close();
+            Files.deleteIfExists(vectorTmp);
+            Files.deleteIfExists(documentTmp);
+        }
+
+        private static ByteBuffer encode(Chunk chunk) {
+            List<byte[]> parts = new ArrayList<>();
+            parts.add(utf8(chunk.id()));
+            parts.add(utf8(chunk.text()));
+            int size = Integer.BYTES * 3 + parts.get(0).length + parts.get(1).length;
+
+            List<Object[]> entries = new ArrayList<>();
+            Map<String, Object> metadata = chunk.metadata() != null ? chunk.metadata() : Map.of();
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                byte[] key = utf8(entry.getKey());
+                Object value = entry.getValue();
+                byte type;
+                int valueSize;
+                if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+                    type = LONG;
+                    valueSize = Long.BYTES;
+                } else if (value instanceof Number) {
+                    type = DOUBLE;
+                    valueSize = Double.BYTES;
+                } else if (value instanceof Boolean) {
+                    type = BOOLEAN;
+                    valueSize = 1;
+                } else {
+                    type = STRING;
+                    value = utf8(value.toString());
+                    valueSize = Integer.BYTES + ((byte[]) value).length;
+                }
+                entries.add(new Object[] {key, type, value});
+                size += Integer.BYTES + key.length + 1 + valueSize;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + size).order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(size);
+            for (byte[] part : parts) {
+                record.putInt(part.length).put(part);
+            }
+            record.putInt(entries.size());
+            for (Object[] entry : entries) {
+                byte[] key = (byte[]) entry[0];
+                byte type = (byte) entry[1];
+                record.putInt(key.length).put(key).put(type);
+                switch (type) {
+                    case LONG -> record.putLong(((Number) entry[2]).longValue());
+                    case DOUBLE -> record.putDouble(((Number) entry[2]).doubleValue());
+                    case BOOLEAN -> record.put((byte) ((Boolean) entry[2] ? 1 : 0));
+                    default -> record.putInt(((byte[]) entry[2]).length).put((byte[]) entry[2]);
+                }
+            }
+            return record.flip();
+        }
+
+        private static byte[] utf8(String value) {
+            return (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+
+        private static void transfer(Path source, FileChannel out, long position) throws IOException {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                long size = in.size();
+                long transferred = 0;
+                while (transferred < size) {
+                    transferred += in.transferTo(transferred, size - transferred, out.position(position + transferred));
+                }
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Converts a {@code SimpleVectorStore} JSON file (such as {@code data/vectorstore.json}) into a binary
+ * {@link VectorSnapshot}. The JSON is streamed one document at a time, so the source never has to fit
+ * on the heap.
+ * <p>
+ * Run it with {@code ./gradlew convertVectorStore -Pjson=... -Psnapshot=... -Pencoding=INT8}.
+ */
+public final class VectorSnapshotConverter {
+
+    private static final TypeReference<Map<String, Object>> METADATA = new TypeReference<>() {};
+
+    private VectorSnapshotConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: VectorSnapshotConverter <vectorstore.json> <snapshot> [FLOAT32|INT8]");
+            System.exit(2);
+        }
+        VectorSnapshot.Encoding encoding = args.length > 2
+                ? VectorSnapshot.Encoding.valueOf(args[2].toUpperCase())
+                : VectorSnapshot.Encoding.FLOAT32;
+        int converted = convert(Paths.get(args[0]), Paths.get(args[1]), encoding, new ObjectMapper());
+        System.out.printf("Converted %d documents from %s into %s (%s)%n", converted, args[0], args[1], encoding);
+    }
+
+    /**
+     * @return the number of documents written to the snapshot
+     */
+    public static int convert(Path json, Path snapshot, VectorSnapshot.Encoding encoding, ObjectMapper objectMapper) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json.toFile());
+             VectorSnapshot.Writer writer = new VectorSnapshot.Writer(snapshot, encoding)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException(json + " is not a SimpleVectorStore file, expected an object of documents by id");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                parser.nextToken();
+                JsonNode document = objectMapper.readTree(parser);
+
+                JsonNode embedding = document.path("embedding");
+                if (!embedding.isArray() || embedding.size() == 0) {
+                    throw new IOException("Document " + key + " in " + json + " has no embedding");
+                }
+                float[] vector = new float[embedding.size()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = embedding.get(i).floatValue();
+                }
+
+                // Older Spring AI versions stored the text as "content"
+                String text = document.has("text") ? document.get("text").asText() : document.path("content").asText();
+                String id = document.has("id") ? document.get("id").asText() : key;
+                Map<String, Object> metadata = document.has("metadata")
+                        ? objectMapper.convertValue(document.get("metadata"), METADATA)
+                        : Map.of();
+                writer.add(new VectorSnapshot.Chunk(id, text, metadata), HnswVectorStore.normalize(vector));
+            }
+            writer.finish();
+            return writer.size();
+        }
+    }
+}
@@ -1,32 +1,224 @@
 package ai.com.example;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
+/**
+ * Current weather from weatherapi.com for the {@code getWeatherFunction} tool.
+ * <p>
+ * All lookups share one {@link HttpClient}, so connections to the API are kept alive and reused. Locations
+ * are normalized (trimmed, lower-cased, whitespace collapsed) and successful answers are cached for
+ * {@code weather.cache.ttl}. Concurrent lookups for the same location wait for the one call already in
+ * flight instead of sending their own. Server errors, timeouts and I/O failures count towards a circuit
+ * breaker; while it is open lookups fail fast without calling the API. A lookup interrupted because its
+ * caller was cancelled counts as neither, and callers waiting on it look up again.
+ */
+@Slf4j
 @Service
 public class WeatherService implements Function<WeatherService.WeatherRequest, WeatherService.WeatherResponse> {
 
-    @Value("${weather.api.key}")
-    private String apiKey;
+    private final String baseUrl;
+    private final String apiKey;
+    private final Duration requestTimeout;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final HttpClient httpClient;
+    private final CircuitBreaker circuitBreaker;
+
+    private final LinkedHashMap<String, CachedWeather> cache;
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Map<String, CompletableFuture<WeatherResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter coalesced;
+    private final Counter fetched;
+    private final Counter rejected;
+    private final Counter errors;
+
+    public WeatherService(MeterRegistry meterRegistry,
+                          @Value("${weather.api.base-url:https://api.weatherapi.com/v1}") String baseUrl,
+                          @Value("${weather.api.key}") String apiKey,
+                          @Value("${weather.api.connect-timeout:2s}") Duration connectTimeout,
+                          @Value("${weather.api.request-timeout:5s}") Duration requestTimeout,
+                          @Value("${weather.cache.ttl:10m}") Duration ttl,
+                          @Value("${weather.cache.max-entries:500}") int maxEntries,
+                          @Value("${weather.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                          @Value("${weather.circuit-breaker.open-duration:30s}") Duration openDuration) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.requestTimeout = requestTimeout;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedWeather> eldest) {
+                return size() > WeatherService.this.maxEntries;
+            }
+        };
+
+        this.hits = lookupCounter("hit", meterRegistry);
+        this.coalesced = lookupCounter("coalesced", meterRegistry);
+        this.fetched = lookupCounter("fetched", meterRegistry);
+        this.rejected = lookupCounter("rejected", meterRegistry);
+        this.errors = lookupCounter("error", meterRegistry);
+        Gauge.builder("weather.circuit-breaker.open", circuitBreaker, breaker -> breaker.state() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while weather lookups fail fast because the API kept failing")
+                .register(meterRegistry);
+    }
 
     @Override
     public WeatherResponse apply(WeatherRequest request) {
-        String url = "https://api.weatherapi.com/v1/current.json?q=" + request.location +
-                "&key=" + apiKey + "&aqi=yes";
-        RestTemplate restTemplate = new RestTemplate();
+        if (request == null || request.location() == null || request.location().isBlank()) {
+            return new WeatherResponse("Error", "No location given");
+        }
+        String key = normalize(request.location());
 
+        while (true) {
+            WeatherResponse cached = cached(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+
+            CompletableFuture<WeatherResponse> call = new CompletableFuture<>();
+            CompletableFuture<WeatherResponse> existing = inFlight.putIfAbsent(key, call);
+            if (existing == null) {
+                return lookup(key, call);
+            }
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CancellationException e) {
+                // The caller doing the lookup was interrupted, its error is not ours: look up again
+            }
+        }
+    }
+
+    private WeatherResponse lookup(String key, CompletableFuture<WeatherResponse> call) {
+        WeatherResponse response = null;
+        try {
+            // A caller that lost the race to a call which completed just now finds its answer cached
+            response = cached(key);
+            if (response == null) {
+                response = fetch(key);
+                if ("Success".equals(response.status())) {
+                    store(key, response);
+                }
+            }
+            return response;
+        } finally {
+            inFlight.remove(key, call);
+            if (Thread.currentThread().isInterrupted()) {
+                // Usually a sibling tool failed and this call was cancelled; callers from other requests retry
+                call.cancel(false);
+            } else {
+                call.complete(response != null ? response : new WeatherResponse("Error", "Failed to fetch weather"));
+            }
+        }
+    }
+
+    private WeatherResponse fetch(String location) {
+        if (!circuitBreaker.tryAcquire()) {
+            rejected.increment();
+            return new WeatherResponse("Error", "Weather service is temporarily unavailable, try again later");
+        }
+        URI uri = URI.create(baseUrl + "/current.json?q=" + URLEncoder.encode(location, StandardCharsets.UTF_8)
+                + "&key=" + URLEncoder.encode(apiKey, StandardCharsets.UTF_8) + "&aqi=yes");
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(requestTimeout).GET().build();
         try {
-            String json = restTemplate.getForObject(url, String.class);
-            return new WeatherResponse("Success", json);
-        } catch (Exception e) {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 500) {
+                circuitBreaker.onFailure();
+                errors.increment();
+                log.warn("Weather API answered {} for '{}'", response.statusCode(), location);
+                return new WeatherResponse("Error", "Failed to fetch weather: HTTP " + response.statusCode());
+            }
+            // The API is healthy even when it rejects the location
+            circuitBreaker.onSuccess();
+            if (response.statusCode() != 200) {
+                errors.increment();
+                return new WeatherResponse("Error", "Failed to fetch weather: " + response.body());
+            }
+            fetched.increment();
+            return new WeatherResponse("Success", response.body());
+        } catch (IOException e) {
+            circuitBreaker.onFailure();
+            errors.increment();
+            log.warn("Weather lookup for '{}' failed: {}", location, e.toString());
             return new WeatherResponse("Error", "Failed to fetch weather: " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Says nothing about the API's health
+            circuitBreaker.release();
+            Thread.currentThread().interrupt();
+            return new WeatherResponse("Error", "Interrupted while fetching weather");
         }
     }
 
+    private WeatherResponse cached(String key) {
+        cacheLock.lock();
+        try {
+            CachedWeather entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() < System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return entry.response();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private void store(String key, WeatherResponse response) {
+        cacheLock.lock();
+        try {
+            cache.put(key, new CachedWeather(response, System.currentTimeMillis() + ttl.toMillis()));
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    static String normalize(String location) {
+        return location.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static Counter lookupCounter(String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("weather.lookups")
+                .description("Weather lookups by how they were answered")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record CachedWeather(WeatherResponse response, long expiresAt) {}
+
     public record WeatherRequest(String location) {}
     public record WeatherResponse(String status, String data) {}
 }
-
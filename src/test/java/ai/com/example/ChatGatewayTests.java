@@ -0,0 +1,94 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatGatewayTests {
+
+	private final CountDownLatch unblock = new CountDownLatch(1);
+	private final List<String> calls = new CopyOnWriteArrayList<>();
+
+	// The first call holds the only slot until the test unblocks it
+	private final ChatModel model = new ChatModel() {
+		@Override
+		public ChatResponse call(Prompt prompt) {
+			calls.add(prompt.getContents());
+			try {
+				unblock.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return null;
+		}
+	};
+
+	@Test
+	void queuedCallsRunByPriorityAndOverflowIsRejected() throws Exception {
+		ChatGateway gateway = new ChatGateway(model, new MockEnvironment(), new SimpleMeterRegistry(), 1, 2, Duration.ofSeconds(5));
+		ChatModel batch = gateway.model("mail", ChatGateway.Priority.BATCH);
+		ChatModel interactive = gateway.model("ai", ChatGateway.Priority.INTERACTIVE);
+
+		Thread running = call(batch, "running");
+		awaitQueued(gateway, 0);
+		Thread queuedBatch = call(batch, "batch");
+		awaitQueued(gateway, 1);
+		Thread queuedInteractive = call(interactive, "interactive");
+		awaitQueued(gateway, 2);
+
+		assertThrows(ChatGateway.ChatRejectedException.class, () -> interactive.call(new Prompt("overflow")));
+
+		unblock.countDown();
+		for (Thread thread : List.of(running, queuedBatch, queuedInteractive)) {
+			thread.join(5_000);
+		}
+		assertEquals(List.of("running", "interactive", "batch"), calls);
+		assertEquals(0, gateway.inFlight());
+	}
+
+	@Test
+	void priorityCanBeOverriddenPerEndpoint() throws Exception {
+		MockEnvironment environment = new MockEnvironment().withProperty("chat.gateway.priority.mail", "INTERACTIVE");
+		ChatGateway gateway = new ChatGateway(model, environment, new SimpleMeterRegistry(), 1, 2, Duration.ofSeconds(5));
+
+		Thread running = call(gateway.model("weather", ChatGateway.Priority.STANDARD), "running");
+		awaitQueued(gateway, 0);
+		Thread weather = call(gateway.model("weather", ChatGateway.Priority.STANDARD), "weather");
+		awaitQueued(gateway, 1);
+		Thread mail = call(gateway.model("mail", ChatGateway.Priority.BATCH), "mail");
+		awaitQueued(gateway, 2);
+
+		unblock.countDown();
+		for (Thread thread : List.of(running, weather, mail)) {
+			thread.join(5_000);
+		}
+		assertEquals(List.of("running", "mail", "weather"), calls);
+	}
+
+	private static Thread call(ChatModel chatModel, String message) {
+		Thread thread = new Thread(() -> chatModel.call(new Prompt(message)));
+		thread.start();
+		return thread;
+	}
+
+	private void awaitQueued(ChatGateway gateway, int queued) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while ((gateway.queued() != queued || gateway.inFlight() != 1) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(gateway.queued() == queued && gateway.inFlight() == 1, "gateway never reached " + queued + " queued calls");
+	}
+}
@@ -0,0 +1,62 @@
+package ai.com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkingServiceTests {
+
+	private static final Path FAQ = Path.of("src/main/resources/docs/olympic-faq.txt");
+
+	@Test
+	void headingStrategyKeepsEachAnswerWithItsQuestion() throws Exception {
+		ChunkingService chunking = new ChunkingService(ChunkingService.Strategy.HEADING, 200, 0, 50, 5, "^(#+ |Q: ).+");
+		List<String> chunks = chunking.chunk(Files.readString(FAQ));
+
+		assertFalse(chunks.isEmpty());
+		for (String chunk : chunks) {
+			assertTrue(chunk.startsWith("Q: "), chunk);
+		}
+		assertTrue(chunks.stream().anyMatch(chunk -> chunk.startsWith("Q: What is the official mascot") && chunk.contains("Olympic Phryge")));
+	}
+
+	@Test
+	void sentenceStrategyPacksWholeSentencesWithOverlap() {
+		String text = IntStream.range(0, 40).mapToObj(i -> "Sentence number " + i + " ends here. ").reduce("", String::concat);
+		ChunkingService chunking = new ChunkingService(ChunkingService.Strategy.SENTENCE, 120, 40, 50, 5, "^# .+");
+		List<String> chunks = chunking.chunk(text);
+
+		assertTrue(chunks.size() > 1);
+		for (int i = 0; i < chunks.size(); i++) {
+			assertTrue(chunks.get(i).startsWith("Sentence number ") && chunks.get(i).endsWith("ends here."), chunks.get(i));
+			if (i > 0) {
+				String previousLast = chunks.get(i - 1).substring(chunks.get(i - 1).lastIndexOf("Sentence number "));
+				assertTrue(chunks.get(i).startsWith(previousLast), "no overlap between chunk " + (i - 1) + " and " + i);
+			}
+		}
+	}
+
+	@Test
+	void oneInstanceSplitsConcurrentlyWithTheSameResult() throws Exception {
+		String text = Files.readString(FAQ);
+		ChunkingService chunking = new ChunkingService(ChunkingService.Strategy.TOKEN, 300, 30, 100, 5, "^# .+");
+		List<String> expected = chunking.chunk(text);
+
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<Future<List<String>>> results = IntStream.range(0, 32).mapToObj(i -> threads.submit(() -> chunking.chunk(text))).toList();
+		for (Future<List<String>> result : results) {
+			assertEquals(expected, result.get());
+		}
+		threads.shutdown();
+	}
+}
@@ -0,0 +1,126 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmbeddingCacheTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void keysDependOnModelAndText() {
+		assertEquals(EmbeddingCache.key("mxbai-embed-large", "hello"), EmbeddingCache.key("mxbai-embed-large", "hello"));
+		assertNotEquals(EmbeddingCache.key("mxbai-embed-large", "hello"), EmbeddingCache.key("nomic-embed-text", "hello"));
+		assertNotEquals(EmbeddingCache.key("mxbai-embed-large", "hello"), EmbeddingCache.key("mxbai-embed-large", "hello!"));
+	}
+
+	@Test
+	void entriesSurviveReopening() throws Exception {
+		Path file = tempDir.resolve("cache.bin");
+		EmbeddingCache.Key key = EmbeddingCache.key("model", "chunk");
+
+		try (EmbeddingCache cache = new EmbeddingCache(file, 10)) {
+			cache.put(key, new float[] {0.25f, -1.5f, 3f});
+		}
+
+		try (EmbeddingCache cache = new EmbeddingCache(file, 10)) {
+			assertEquals(1, cache.size());
+			assertArrayEquals(new float[] {0.25f, -1.5f, 3f}, cache.get(key));
+		}
+	}
+
+	@Test
+	void corruptRecordLengthDropsTheTail() throws Exception {
+		EmbeddingCache.Key key = EmbeddingCache.key("model", "chunk");
+		for (int dimensions : new int[] {-1, 0, Integer.MAX_VALUE}) {
+			Path file = tempDir.resolve("cache" + dimensions + ".bin");
+			try (EmbeddingCache cache = new EmbeddingCache(file, 10)) {
+				cache.put(key, new float[] {0.25f, -1.5f, 3f});
+			}
+			long intact = Files.size(file);
+			ByteBuffer torn = ByteBuffer.allocate(32 + Integer.BYTES + 8).put(new byte[32]).putInt(dimensions);
+			Files.write(file, torn.array(), StandardOpenOption.APPEND);
+
+			try (EmbeddingCache cache = new EmbeddingCache(file, 10)) {
+				assertEquals(1, cache.size(), "dimensions " + dimensions);
+				assertArrayEquals(new float[] {0.25f, -1.5f, 3f}, cache.get(key));
+			}
+			assertEquals(intact, Files.size(file));
+		}
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntry() throws Exception {
+		Path file = tempDir.resolve("cache.bin");
+		EmbeddingCache.Key first = EmbeddingCache.key("model", "first");
+		EmbeddingCache.Key second = EmbeddingCache.key("model", "second");
+		EmbeddingCache.Key third = EmbeddingCache.key("model", "third");
+
+		try (EmbeddingCache cache = new EmbeddingCache(file, 2)) {
+			cache.put(first, new float[] {1f});
+			cache.put(second, new float[] {2f});
+			cache.get(first);
+			cache.put(third, new float[] {3f});
+
+			assertNull(cache.get(second));
+			assertArrayEquals(new float[] {1f}, cache.get(first));
+		}
+
+		// Recency is kept across restarts, so "third" is now the eldest entry
+		try (EmbeddingCache cache = new EmbeddingCache(file, 2)) {
+			cache.put(second, new float[] {2f});
+			assertNull(cache.get(third));
+			assertEquals(2, cache.size());
+		}
+	}
+
+	@Test
+	void cachesChunkEmbeddingsButNotQueries() throws Exception {
+		AtomicInteger modelCalls = new AtomicInteger();
+		EmbeddingModel model = new EmbeddingModel() {
+			@Override
+			public EmbeddingResponse call(EmbeddingRequest request) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public float[] embed(String text) {
+				modelCalls.incrementAndGet();
+				return new float[] {text.length()};
+			}
+
+			@Override
+			public float[] embed(Document document) {
+				return embed(document.getText());
+			}
+		};
+
+		try (EmbeddingCache cache = new EmbeddingCache(tempDir.resolve("cache.bin"), 10)) {
+			CachingEmbeddingModel caching = new CachingEmbeddingModel(model, cache, "model", new SimpleMeterRegistry());
+			caching.embed(Document.builder().text("chunk").build());
+			caching.embed(Document.builder().text("chunk").build());
+			caching.embed("question");
+			caching.embed("question");
+
+			assertEquals(3, modelCalls.get());
+			assertEquals(1, cache.size());
+		}
+	}
+}
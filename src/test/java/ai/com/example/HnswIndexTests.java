@@ -0,0 +1,129 @@
+package ai.com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTests {
+
+	private static final int DIMENSIONS = 32;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void findsNearlyAllTrueNearestNeighbors() throws Exception {
+		Random random = new Random(7);
+		try (MappedVectorFile vectors = MappedVectorFile.open(tempDir.resolve("vectors.f32"), DIMENSIONS)) {
+			HnswIndex index = new HnswIndex(access(vectors), 8, 64, 1);
+			for (int i = 0; i < 2000; i++) {
+				float[] vector = HnswVectorStore.normalize(randomVector(random));
+				vectors.append(vector);
+				index.insert(vector);
+			}
+
+			int found = 0;
+			int expected = 0;
+			for (int q = 0; q < 50; q++) {
+				float[] query = HnswVectorStore.normalize(randomVector(random));
+				Set<Integer> exact = bruteForce(vectors, query, 10);
+				Set<Integer> approximate = index.search(query, 10, 64, node -> true).stream()
+						.map(HnswIndex.Neighbor::node)
+						.collect(Collectors.toSet());
+				approximate.retainAll(exact);
+				found += approximate.size();
+				expected += exact.size();
+			}
+			assertTrue(found >= 0.9 * expected, "recall@10 was " + (double) found / expected);
+		}
+	}
+
+	@Test
+	void filteredSearchOnlyReturnsAcceptedNodes() throws Exception {
+		Random random = new Random(11);
+		try (MappedVectorFile vectors = MappedVectorFile.open(tempDir.resolve("vectors.f32"), DIMENSIONS)) {
+			HnswIndex index = new HnswIndex(access(vectors), 8, 64, 1);
+			for (int i = 0; i < 500; i++) {
+				float[] vector = HnswVectorStore.normalize(randomVector(random));
+				vectors.append(vector);
+				index.insert(vector);
+			}
+
+			// Only every 50th node is accepted, so the search has to look past most of the graph
+			List<HnswIndex.Neighbor> results = index.search(randomVector(random), 5, 16, node -> node % 50 == 0);
+			assertEquals(5, results.size());
+			assertTrue(results.stream().allMatch(neighbor -> neighbor.node() % 50 == 0));
+		}
+	}
+
+	@Test
+	void graphAndVectorsSurviveReopening() throws Exception {
+		Random random = new Random(3);
+		Path file = tempDir.resolve("vectors.f32");
+		float[] query = HnswVectorStore.normalize(randomVector(random));
+		byte[] graph;
+		List<HnswIndex.Neighbor> before;
+
+		try (MappedVectorFile vectors = MappedVectorFile.open(file, DIMENSIONS)) {
+			HnswIndex index = new HnswIndex(access(vectors), 8, 64, 1);
+			for (int i = 0; i < 300; i++) {
+				float[] vector = HnswVectorStore.normalize(randomVector(random));
+				vectors.append(vector);
+				index.insert(vector);
+			}
+			before = index.search(query, 5, 32, node -> true);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			index.write(new DataOutputStream(bytes));
+			graph = bytes.toByteArray();
+		}
+
+		try (MappedVectorFile vectors = MappedVectorFile.open(file, 0)) {
+			assertEquals(300, vectors.size());
+			HnswIndex index = HnswIndex.read(new DataInputStream(new ByteArrayInputStream(graph)), access(vectors), 64, 1);
+			assertEquals(before, index.search(query, 5, 32, node -> true));
+		}
+	}
+
+	private static HnswIndex.Vectors access(MappedVectorFile vectors) {
+		return new HnswIndex.Vectors() {
+			@Override
+			public float[] vector(int node) {
+				return vectors.get(node);
+			}
+
+			@Override
+			public float similarity(int node, float[] query) {
+				return vectors.dot(node, query);
+			}
+		};
+	}
+
+	private static Set<Integer> bruteForce(MappedVectorFile vectors, float[] query, int k) {
+		return IntStream.range(0, vectors.size()).boxed()
+				.sorted(Comparator.comparingDouble((Integer node) -> vectors.dot(node, query)).reversed())
+				.limit(k)
+				.collect(Collectors.toSet());
+	}
+
+	private static float[] randomVector(Random random) {
+		float[] vector = new float[DIMENSIONS];
+		for (int i = 0; i < DIMENSIONS; i++) {
+			vector[i] = (float) random.nextGaussian();
+		}
+		return vector;
+	}
+}
@@ -0,0 +1,229 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswVectorStoreTests {
+
+	private static final int DIMENSIONS = 32;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void compactionDropsTombstonesAndSurvivesReopening() throws Exception {
+		List<Document> chunks = chunks("a", 200);
+		try (HnswVectorStore store = open(0)) {
+			store.add(chunks);
+			store.delete(chunks.subList(0, 100).stream().map(Document::getId).toList());
+			assertEquals(100, store.tombstones());
+
+			store.compact();
+			assertEquals(0, store.tombstones());
+			assertEquals(chunks.get(150).getId(), nearest(store, chunks.get(150)));
+		}
+		assertFalse(Files.exists(tempDir.resolve("compaction.done")));
+		assertFalse(Files.exists(tempDir.resolve("vectors.f32.compact")));
+
+		try (HnswVectorStore store = open(0)) {
+			assertEquals(0, store.tombstones());
+			assertEquals(chunks.get(199).getId(), nearest(store, chunks.get(199)));
+			// New chunks go into the compacted graph
+			List<Document> more = chunks("b", 10);
+			store.add(more);
+			assertEquals(more.get(3).getId(), nearest(store, more.get(3)));
+		}
+	}
+
+	@Test
+	void compactsOnceTombstonesReachTheThreshold() throws Exception {
+		List<Document> chunks = chunks("a", 100);
+		try (HnswVectorStore store = open(0.25)) {
+			store.add(chunks);
+			store.delete(chunks.subList(0, 30).stream().map(Document::getId).toList());
+			long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+			while (store.tombstones() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, store.tombstones());
+			assertEquals(chunks.get(50).getId(), nearest(store, chunks.get(50)));
+		}
+	}
+
+	@Test
+	void writesDuringCompactionAreKept() throws Exception {
+		List<Document> chunks = chunks("a", 2000);
+		List<Document> more = chunks("b", 200);
+		try (HnswVectorStore store = open(0)) {
+			store.add(chunks);
+			store.delete(chunks.subList(0, 1000).stream().map(Document::getId).toList());
+
+			CompletableFuture<Void> compaction = CompletableFuture.runAsync(() -> {
+				try {
+					store.compact();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			// Searches and writes don't wait for the rebuild
+			for (Document chunk : more) {
+				store.add(List.of(chunk));
+				assertEquals(chunks.get(1500).getId(), nearest(store, chunks.get(1500)));
+			}
+			store.delete(chunks.subList(1000, 1100).stream().map(Document::getId).toList());
+			compaction.join();
+
+			assertLive(store, chunks.subList(1100, 2000), more, chunks.get(1050));
+		}
+		try (HnswVectorStore store = open(0)) {
+			assertLive(store, chunks.subList(1100, 2000), more, chunks.get(1050));
+		}
+	}
+
+	private static void assertLive(HnswVectorStore store, List<Document> kept, List<Document> added, Document deleted) {
+		assertTrue(store.tombstones() <= 100);
+		assertEquals(kept.get(0).getId(), nearest(store, kept.get(0)));
+		assertEquals(added.get(150).getId(), nearest(store, added.get(150)));
+		assertFalse(nearest(store, deleted).equals(deleted.getId()));
+	}
+
+	@Test
+	void quantizedSearchKeepsRecallAcrossReopening() throws Exception {
+		for (QuantizedVectors.Mode mode : List.of(QuantizedVectors.Mode.INT8, QuantizedVectors.Mode.BINARY)) {
+			Path directory = tempDir.resolve(mode.name());
+			List<Document> chunks = chunks("a", 2000);
+			try (HnswVectorStore store = open(directory, mode, 0)) {
+				store.add(chunks);
+				assertRecall(store, chunks, mode + " after adding");
+			}
+			// The codes are rebuilt from the vector file
+			try (HnswVectorStore store = open(directory, mode, 0)) {
+				assertRecall(store, chunks, mode + " after reopening");
+			}
+		}
+	}
+
+	@Test
+	void quantizationSurvivesARestartBeforeTheFirstFlush() throws Exception {
+		List<Document> chunks = chunks("a", 500);
+		try (HnswVectorStore store = open(tempDir, QuantizedVectors.Mode.INT8, 0)) {
+			store.add(chunks);
+		}
+		// As if the process died after appending vectors but before the graph was written
+		Files.delete(tempDir.resolve("graph.bin"));
+		Files.delete(tempDir.resolve("documents.json"));
+
+		try (HnswVectorStore store = open(tempDir, QuantizedVectors.Mode.INT8, 0)) {
+			assertTrue(store.searchesQuantized());
+			store.add(chunks);
+			assertRecall(store, chunks, "after restarting without a graph");
+		}
+	}
+
+	private static void assertRecall(HnswVectorStore store, List<Document> chunks, String description) {
+		RandomEmbeddingModel embeddingModel = new RandomEmbeddingModel();
+		List<float[]> vectors = chunks.stream().map(chunk -> HnswVectorStore.normalize(embeddingModel.embed(chunk))).toList();
+		Random random = new Random(5);
+		int found = 0;
+		int expected = 0;
+		for (int q = 0; q < 50; q++) {
+			float[] query = HnswVectorStore.normalize(embeddingModel.embed("query " + random.nextInt()));
+			Set<String> exact = IntStream.range(0, chunks.size()).boxed()
+					.sorted(Comparator.comparingDouble((Integer i) -> dot(vectors.get(i), query)).reversed())
+					.limit(10)
+					.map(i -> chunks.get(i).getId())
+					.collect(Collectors.toSet());
+			Set<String> results = store.similaritySearch(SearchRequest.builder().query("query").topK(10).build(), query).stream()
+					.map(Document::getId)
+					.collect(Collectors.toSet());
+			results.retainAll(exact);
+			found += results.size();
+			expected += exact.size();
+		}
+		assertTrue(found >= 0.8 * expected, description + ": recall@10 was " + (double) found / expected);
+	}
+
+	private static float dot(float[] a, float[] b) {
+		float sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private HnswVectorStore open(double compactionThreshold) throws Exception {
+		return open(tempDir, QuantizedVectors.Mode.NONE, compactionThreshold);
+	}
+
+	private static HnswVectorStore open(Path directory, QuantizedVectors.Mode quantization, double compactionThreshold) throws Exception {
+		// A rerank factor of 0 picks the mode's default
+		return new HnswVectorStore(new RandomEmbeddingModel(), new ObjectMapper(), directory, 8, 64, 64, Duration.ofHours(1),
+				quantization, 0, compactionThreshold);
+	}
+
+	private static String nearest(HnswVectorStore store, Document chunk) {
+		return store.similaritySearch(SearchRequest.builder().query(chunk.getText()).topK(1).build()).get(0).getId();
+	}
+
+	private static List<Document> chunks(String prefix, int count) {
+		return IntStream.range(0, count)
+				.mapToObj(i -> Document.builder().id(prefix + i).text(prefix + " chunk " + i).build())
+				.toList();
+	}
+
+	/**
+	 * The same random vector for the same text
+	 */
+	static class RandomEmbeddingModel implements EmbeddingModel {
+
+		@Override
+		public EmbeddingResponse call(EmbeddingRequest request) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public float[] embed(String text) {
+			Random random = new Random(text.hashCode());
+			float[] vector = new float[DIMENSIONS];
+			for (int i = 0; i < DIMENSIONS; i++) {
+				vector[i] = (float) random.nextGaussian();
+			}
+			return vector;
+		}
+
+		@Override
+		public float[] embed(Document document) {
+			return embed(document.getText());
+		}
+
+		@Override
+		public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+			return documents.stream().map(this::embed).toList();
+		}
+	}
+}
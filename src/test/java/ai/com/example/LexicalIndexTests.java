@@ -0,0 +1,76 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LexicalIndexTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void exactTermsRankFirst() throws Exception {
+		LexicalIndex index = new LexicalIndex(new ObjectMapper(), tempDir.toString(), 1.2, 0.75);
+		index.index("athletics.pdf", List.of(
+				chunk("relay", "The men's 4x100m relay final was held at the Stade de France.", "uploaded"),
+				chunk("marathon", "The marathon route passed through Versailles.", "uploaded"),
+				chunk("swimming", "Swimming events were held at the Paris La Defense Arena.", "uploaded")));
+
+		List<Document> results = index.search("Who won the 4x100m relay?", 2, metadata -> true);
+
+		assertEquals("relay", results.get(0).getId());
+		assertTrue(results.get(0).getScore() > 0);
+	}
+
+	@Test
+	void filtersAndRemovalApply() throws Exception {
+		LexicalIndex index = new LexicalIndex(new ObjectMapper(), tempDir.toString(), 1.2, 0.75);
+		index.index("venues.pdf", List.of(chunk("uploaded-venue", "Arena venue capacity", "uploaded")));
+		index.index("seed.pdf", List.of(chunk("seeded-venue", "Arena venue seating", "seed")));
+
+		Filter.Expression uploadedOnly = new Filter.Expression(Filter.ExpressionType.EQ,
+				new Filter.Key("source"), new Filter.Value("uploaded"));
+		List<Document> filtered = index.search("arena venue", 5, MetadataFilters.of(uploadedOnly));
+		assertEquals(List.of("uploaded-venue"), filtered.stream().map(Document::getId).toList());
+
+		index.remove("venues.pdf");
+		assertEquals(1, index.size());
+		assertEquals(List.of("seeded-venue"), index.search("arena", 5, metadata -> true).stream().map(Document::getId).toList());
+	}
+
+	@Test
+	void replacementInPartsSwapsTheFileOnCommit() throws Exception {
+		LexicalIndex index = new LexicalIndex(new ObjectMapper(), tempDir.toString(), 1.2, 0.75);
+		index.index("guide.pdf", List.of(chunk("old", "Old opening ceremony schedule", "uploaded")));
+
+		LexicalIndex.Replacement replacement = index.replace("guide.pdf");
+		replacement.add(List.of(chunk("first", "New ceremony schedule on the Seine", "uploaded")));
+		replacement.add(List.of(chunk("second", "Closing ceremony at the Stade de France", "uploaded")));
+		assertEquals(List.of("old"), ids(index.search("ceremony", 5, metadata -> true)));
+
+		replacement.commit();
+		assertEquals(2, index.size());
+		assertEquals(List.of("first", "second"), ids(index.search("ceremony", 5, metadata -> true)).stream().sorted().toList());
+
+		LexicalIndex reopened = new LexicalIndex(new ObjectMapper(), tempDir.toString(), 1.2, 0.75);
+		assertEquals(2, reopened.size());
+	}
+
+	private static List<String> ids(List<Document> documents) {
+		return documents.stream().map(Document::getId).toList();
+	}
+
+	private static Document chunk(String id, String text, String source) {
+		return new Document(id, text, Map.of("source", source, "filename", id + ".pdf"));
+	}
+}
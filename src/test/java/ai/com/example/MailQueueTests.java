@@ -0,0 +1,145 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailQueueTests {
+
+	@TempDir
+	Path dir;
+
+	// Local SMTP stand-in: records each batch (one connection), holds "slow@" until released
+	// and rejects the first attempt for "bounce@"
+	private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final MailSender smtp = new MailSender() {
+		private boolean bounced;
+
+		@Override
+		public void send(SimpleMailMessage... messages) {
+			batches.add(Arrays.stream(messages).map(message -> message.getTo()[0]).toList());
+			if (messages[0].getTo()[0].startsWith("slow@")) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			Map<Object, Exception> failed = new LinkedHashMap<>();
+			for (SimpleMailMessage message : messages) {
+				if (message.getTo()[0].startsWith("bounce@") && !bounced) {
+					bounced = true;
+					failed.put(message, new IllegalStateException("451 try again later"));
+				}
+			}
+			if (!failed.isEmpty()) {
+				throw new MailSendException(failed);
+			}
+		}
+	};
+
+	@Test
+	void sendsInBatchesAndRetriesFailedMessages() throws Exception {
+		// The single worker is busy with the slow message while the next three queue up behind it
+		MailQueue queue = queue(smtp, 1);
+		queue.enqueue("slow@example.com", "Hello", "Body");
+		await(() -> batches.size() == 1);
+		OutboundMail first = queue.enqueue("a@example.com", "Hello", "Body");
+		OutboundMail bounce = queue.enqueue("bounce@example.com", "Hello", "Body");
+		OutboundMail third = queue.enqueue("c@example.com", "Hello", "Body");
+		release.countDown();
+		await(() -> queue.get(bounce.id()).orElseThrow().status() == OutboundMail.Status.SENT);
+
+		assertEquals(3, batches.get(1).size());
+		assertEquals(List.of("bounce@example.com"), batches.get(2));
+		assertEquals(OutboundMail.Status.SENT, queue.get(first.id()).orElseThrow().status());
+		assertEquals(OutboundMail.Status.SENT, queue.get(third.id()).orElseThrow().status());
+		assertEquals(2, queue.get(bounce.id()).orElseThrow().attempts());
+		assertEquals(0, queue.queued());
+		queue.shutdown();
+	}
+
+	@Test
+	void givesUpAfterMaxAttemptsAndKeepsStatusAcrossRestarts() throws Exception {
+		MailSender down = messages -> {
+			throw new MailSendException("Connection refused");
+		};
+		MailQueue queue = queue(down, 1);
+		OutboundMail mail = queue.enqueue("a@example.com", "Hello", "Body");
+		await(() -> queue.get(mail.id()).orElseThrow().status() == OutboundMail.Status.FAILED);
+		queue.shutdown();
+
+		MailQueue restarted = queue(smtp, 1);
+		OutboundMail reloaded = restarted.get(mail.id()).orElseThrow();
+		assertEquals(OutboundMail.Status.FAILED, reloaded.status());
+		assertEquals(3, reloaded.attempts());
+		assertEquals("Connection refused", reloaded.lastError());
+		assertTrue(batches.isEmpty());
+		restarted.shutdown();
+	}
+
+	@Test
+	void lingersSoMessagesEnqueuedTogetherShareABatch() throws Exception {
+		MailQueue queue = queue(smtp, 1, Duration.ofMillis(500));
+		OutboundMail first = queue.enqueue("a@example.com", "Hello", "Body");
+		queue.enqueue("b@example.com", "Hello", "Body");
+		OutboundMail last = queue.enqueue("c@example.com", "Hello", "Body");
+		await(() -> queue.get(last.id()).orElseThrow().status() == OutboundMail.Status.SENT);
+
+		assertEquals(1, batches.size());
+		assertEquals(Set.of("a@example.com", "b@example.com", "c@example.com"), Set.copyOf(batches.get(0)));
+		assertEquals(OutboundMail.Status.SENT, queue.get(first.id()).orElseThrow().status());
+		queue.shutdown();
+	}
+
+	@Test
+	void retriesOnlyTheFailedOneOfTwoIdenticalMessages() throws Exception {
+		MailQueue queue = queue(smtp, 1);
+		OutboundMail first = queue.enqueue("bounce@example.com", "Hello", "Body");
+		OutboundMail second = queue.enqueue("bounce@example.com", "Hello", "Body");
+		await(() -> queue.get(first.id()).orElseThrow().status() == OutboundMail.Status.SENT
+				&& queue.get(second.id()).orElseThrow().status() == OutboundMail.Status.SENT);
+
+		// Identical messages never share a batch, so the failure is attributed to the message that bounced
+		assertTrue(batches.stream().allMatch(batch -> batch.size() == 1));
+		assertEquals(3, queue.get(first.id()).orElseThrow().attempts() + queue.get(second.id()).orElseThrow().attempts());
+		queue.shutdown();
+	}
+
+	private MailQueue queue(MailSender sender, int workers) throws Exception {
+		return queue(sender, workers, Duration.ofMillis(50));
+	}
+
+	private MailQueue queue(MailSender sender, int workers, Duration linger) throws Exception {
+		return new MailQueue(sender, new ObjectMapper(), new SimpleMeterRegistry(), dir.toString(),
+				workers, 10, linger, 3, Duration.ofMillis(20), Duration.ofMillis(50), Duration.ofDays(7));
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5s");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelToolCallingManagerTests {
+
+	private final AtomicInteger weatherCalls = new AtomicInteger();
+	private final AtomicInteger emailCalls = new AtomicInteger();
+
+	private final Map<String, FunctionCallback> tools = Map.of(
+			"getWeatherFunction", tool("getWeatherFunction", arguments -> {
+				weatherCalls.incrementAndGet();
+				sleep(arguments.contains("Atlantis") ? 2_000 : 300);
+				return "{\"status\":\"Success\",\"data\":" + arguments + "}";
+			}),
+			"sendEmailFunction", tool("sendEmailFunction", arguments -> {
+				emailCalls.incrementAndGet();
+				return "{\"status\":\"Queued\"}";
+			}));
+
+	private final ParallelToolCallingManager manager = new ParallelToolCallingManager(tools::get, e -> e.getMessage(),
+			new MockEnvironment(), new SimpleMeterRegistry(), new ObjectMapper(), Duration.ofSeconds(1),
+			Set.of("getWeatherFunction"), Duration.ofMinutes(5), 100);
+
+	@Test
+	void runsOneTurnsCallsConcurrentlyAndCachesOnlyIdempotentTools() {
+		long start = System.nanoTime();
+		ToolExecutionResult result = manager.executeToolCalls(prompt(), response(
+				call("1", "getWeatherFunction", "{\"location\":\"London\"}"),
+				call("2", "getWeatherFunction", "{\"location\":\"Paris\"}"),
+				call("3", "getWeatherFunction", "{\"location\":\"Rome\"}"),
+				call("4", "getWeatherFunction", "{ \"location\" : \"London\" }"),
+				call("5", "sendEmailFunction", "{\"to\":\"a@example.com\"}")));
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		assertTrue(elapsedMillis < 800, "three 300 ms lookups took " + elapsedMillis + " ms");
+		assertEquals(3, weatherCalls.get());
+		List<ToolResponseMessage.ToolResponse> responses = responses(result);
+		assertEquals(List.of("1", "2", "3", "4", "5"), responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+		assertEquals(responses.get(0).responseData(), responses.get(3).responseData());
+
+		manager.executeToolCalls(prompt(), response(
+				call("6", "getWeatherFunction", "{\"location\":\"Paris\"}"),
+				call("7", "sendEmailFunction", "{\"to\":\"a@example.com\"}")));
+		assertEquals(3, weatherCalls.get());
+		assertEquals(2, emailCalls.get());
+	}
+
+	@Test
+	void slowToolAnswersWithATimeoutError() {
+		ToolExecutionResult result = manager.executeToolCalls(prompt(), response(
+				call("1", "getWeatherFunction", "{\"location\":\"Atlantis\"}"),
+				call("2", "getWeatherFunction", "{\"location\":\"London\"}")));
+
+		List<ToolResponseMessage.ToolResponse> responses = responses(result);
+		assertTrue(responses.get(0).responseData().contains("did not answer"));
+		assertTrue(responses.get(1).responseData().contains("Success"));
+	}
+
+	@Test
+	void identicalSlowCallsBothAnswerWithATimeoutError() {
+		// The two calls share one execution, the first to time out cancels it for the second
+		ToolExecutionResult result = manager.executeToolCalls(prompt(), response(
+				call("1", "getWeatherFunction", "{\"location\":\"Atlantis\"}"),
+				call("2", "getWeatherFunction", "{\"location\":\"Atlantis\"}")));
+
+		List<ToolResponseMessage.ToolResponse> responses = responses(result);
+		assertEquals(1, weatherCalls.get());
+		assertTrue(responses.get(0).responseData().contains("did not answer"));
+		assertTrue(responses.get(1).responseData().contains("did not answer"));
+	}
+
+	private static Prompt prompt() {
+		return new Prompt(List.<Message>of(new UserMessage("What's the weather?")));
+	}
+
+	private static ChatResponse response(AssistantMessage.ToolCall... calls) {
+		return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(calls)))));
+	}
+
+	private static AssistantMessage.ToolCall call(String id, String name, String arguments) {
+		return new AssistantMessage.ToolCall(id, "function", name, arguments);
+	}
+
+	private static List<ToolResponseMessage.ToolResponse> responses(ToolExecutionResult result) {
+		List<Message> history = result.conversationHistory();
+		return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+	}
+
+	private static FunctionCallback tool(String name, java.util.function.Function<String, String> body) {
+		return new FunctionCallback() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public String getDescription() {
+				return name;
+			}
+
+			@Override
+			public String getInputTypeSchema() {
+				return "{}";
+			}
+
+			@Override
+			public String call(String functionInput) {
+				return body.apply(functionInput);
+			}
+		};
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
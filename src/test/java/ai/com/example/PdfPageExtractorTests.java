@@ -0,0 +1,61 @@
+package ai.com.example;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfPageExtractorTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void streamsPagesInOrderOneWindowAtATime() throws Exception {
+		Path file = dir.resolve("manual.pdf");
+		try (PDDocument document = new PDDocument()) {
+			for (int i = 1; i <= 30; i++) {
+				PDPage page = new PDPage();
+				document.addPage(page);
+				try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+					content.beginText();
+					content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+					content.newLineAtOffset(50, 700);
+					content.showText("Page " + i + " of the manual");
+					content.endText();
+				}
+			}
+			document.save(file.toFile());
+		}
+
+		PdfPageExtractor extractor = new PdfPageExtractor(3, 2);
+		List<Integer> windowSizes = new ArrayList<>();
+		List<Document> pages = new ArrayList<>();
+		int pageCount = extractor.extract(file, Map.of("filename", "manual.pdf"), window -> {
+			windowSizes.add(window.size());
+			pages.addAll(window);
+		});
+
+		assertEquals(30, pageCount);
+		assertEquals(List.of(6, 6, 6, 6, 6), windowSizes);
+		assertEquals(IntStream.rangeClosed(1, 30).boxed().toList(),
+				pages.stream().map(page -> page.getMetadata().get(PdfPageExtractor.PAGE_NUMBER)).toList());
+		for (Document page : pages) {
+			assertTrue(page.getText().contains("Page " + page.getMetadata().get(PdfPageExtractor.PAGE_NUMBER) + " of"));
+			assertEquals("manual.pdf", page.getMetadata().get("filename"));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RerankStageTests {
+
+	private static final List<Document> SEARCH_RESULTS = List.of(
+			new Document("a", "opening ceremony on the Seine", Map.of()),
+			new Document("b", "breaking debuts in Paris", Map.of()),
+			new Document("c", "surfing takes place in Tahiti", Map.of()));
+
+	@Test
+	void keepsTheBestScoredCandidates() {
+		Reranker reranker = (query, candidate) -> candidate.getText().contains(query) ? 10 : 1;
+		RerankStage stage = new RerankStage(Optional.of(reranker), new SimpleMeterRegistry(), 20, Duration.ofSeconds(5), 4);
+
+		List<Document> reranked = stage.rerank("Tahiti", SEARCH_RESULTS, 2);
+
+		assertEquals(List.of("c", "a"), reranked.stream().map(Document::getId).toList());
+		stage.shutdown();
+	}
+
+	@Test
+	void ratesNoMoreCandidatesThanTheScorerAllows() {
+		List<String> rated = new CopyOnWriteArrayList<>();
+		Reranker reranker = new Reranker() {
+			@Override
+			public double score(String query, Document candidate) {
+				rated.add(candidate.getId());
+				return candidate.getId().equals("b") ? 10 : 1;
+			}
+
+			@Override
+			public int maxCandidates() {
+				return 2;
+			}
+		};
+		RerankStage stage = new RerankStage(Optional.of(reranker), new SimpleMeterRegistry(), 20, Duration.ofSeconds(5), 4);
+
+		assertEquals(2, stage.candidates(1));
+		assertEquals(3, stage.candidates(3));
+		List<Document> reranked = stage.rerank("Paris", SEARCH_RESULTS, 1);
+
+		assertEquals(List.of("b"), reranked.stream().map(Document::getId).toList());
+		assertEquals(Set.of("a", "b"), Set.copyOf(rated));
+		stage.shutdown();
+	}
+
+	@Test
+	void keepsSearchOrderWhenScoringExceedsTheBudget() {
+		Reranker reranker = (query, candidate) -> {
+			try {
+				Thread.sleep(candidate.getId().equals("b") ? 5_000 : 0);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return candidate.getId().equals("c") ? 10 : 1;
+		};
+		RerankStage stage = new RerankStage(Optional.of(reranker), new SimpleMeterRegistry(), 20, Duration.ofMillis(100), 4);
+
+		List<Document> reranked = stage.rerank("Tahiti", SEARCH_RESULTS, 2);
+
+		assertEquals(List.of("a", "b"), reranked.stream().map(Document::getId).toList());
+		stage.shutdown();
+	}
+}
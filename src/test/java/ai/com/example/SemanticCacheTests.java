@@ -0,0 +1,34 @@
+package ai.com.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SemanticCacheTests {
+
+	private final SemanticCache cache = new SemanticCache(new SimpleMeterRegistry(), true, 0.95, Duration.ofHours(1), 10);
+
+	@Test
+	void answersNearDuplicateQuestionsFromTheCache() {
+		cache.getOrGenerate("faq", "When do the games start?", new float[] {1f, 0f}, () -> "26 July");
+
+		assertEquals("26 July", cache.getOrGenerate("faq", "When do the games begin?", new float[] {0.99f, 0.01f}, () -> "regenerated"));
+		assertEquals("regenerated", cache.getOrGenerate("ask", "When do the games begin?", new float[] {0.99f, 0.01f}, () -> "regenerated"));
+	}
+
+	@Test
+	void doesNotCacheAnAnswerGeneratedWhileTheCorpusChanged() {
+		String answer = cache.getOrGenerate("faq", "When do the games start?", new float[] {1f, 0f}, () -> {
+			cache.onCorpusChanged(new CorpusChangedEvent("olympic-faq.txt"));
+			return "answer from the old corpus";
+		});
+
+		assertEquals("answer from the old corpus", answer);
+		assertEquals(0, cache.size());
+		assertEquals("answer from the new corpus",
+				cache.getOrGenerate("faq", "When do the games start?", new float[] {1f, 0f}, () -> "answer from the new corpus"));
+	}
+}
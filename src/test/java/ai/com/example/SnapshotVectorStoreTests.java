@@ -0,0 +1,96 @@
+package ai.com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotVectorStoreTests {
+
+	@TempDir
+	Path tempDir;
+
+	private final HnswVectorStoreTests.RandomEmbeddingModel embeddingModel = new HnswVectorStoreTests.RandomEmbeddingModel();
+
+	@Test
+	void writesAreSearchableAndMergedOnTheNextStart() throws Exception {
+		Path file = tempDir.resolve("store.snap");
+		try (VectorSnapshot.Writer writer = new VectorSnapshot.Writer(file, VectorSnapshot.Encoding.FLOAT32)) {
+			writer.add(new VectorSnapshot.Chunk("old", "old chunk", Map.of("filename", "old.pdf")),
+					HnswVectorStore.normalize(embeddingModel.embed("old chunk")));
+			writer.finish();
+		}
+		List<Document> chunks = IntStream.range(0, 20)
+				.mapToObj(i -> Document.builder().id("new" + i).text("new chunk " + i).metadata("filename", "new.pdf").build())
+				.toList();
+
+		try (SnapshotVectorStore store = open(file)) {
+			store.add(chunks);
+			store.delete(List.of("old", "new3"));
+			assertEquals("new5", nearest(store, "new chunk 5"));
+			assertFalse(store.findChunkIdsByFilename().containsKey("old.pdf"));
+			assertEquals(19, store.findChunkIds("new.pdf").size());
+		}
+		assertTrue(Files.exists(tempDir.resolve("store.snap.delta.json")));
+
+		try (SnapshotVectorStore store = open(file)) {
+			assertFalse(Files.exists(tempDir.resolve("store.snap.delta.json")));
+			assertEquals(Map.of("new.pdf", 19), sizes(store.findChunkIdsByFilename()));
+			assertEquals("new5", nearest(store, "new chunk 5"));
+			assertFalse(store.findChunkIds("new.pdf").contains("new3"));
+		}
+	}
+
+	@Test
+	void addingAnExistingIdReplacesTheSnapshotChunk() throws Exception {
+		Path file = tempDir.resolve("store.snap");
+		try (VectorSnapshot.Writer writer = new VectorSnapshot.Writer(file, VectorSnapshot.Encoding.INT8)) {
+			writer.add(new VectorSnapshot.Chunk("a", "first version", Map.of("filename", "a.pdf")),
+					HnswVectorStore.normalize(embeddingModel.embed("first version")));
+			writer.finish();
+		}
+
+		try (SnapshotVectorStore store = open(file)) {
+			store.add(List.of(Document.builder().id("a").text("second version").metadata("filename", "a.pdf").build()));
+			List<Document> chunks = store.findChunks("a.pdf");
+			assertEquals(1, chunks.size());
+			assertEquals("second version", chunks.get(0).getText());
+		}
+
+		// A crash after the merge but before the delta is removed must not duplicate the chunk
+		Path delta = tempDir.resolve("store.snap.delta.json");
+		try (SnapshotVectorStore store = open(file)) {
+			store.add(List.of(Document.builder().id("b").text("other").metadata("filename", "b.pdf").build()));
+		}
+		Files.copy(delta, tempDir.resolve("delta.copy"));
+		open(file).close();
+		Files.copy(tempDir.resolve("delta.copy"), delta);
+		try (SnapshotVectorStore store = open(file)) {
+			assertEquals(Map.of("a.pdf", 1, "b.pdf", 1), sizes(store.findChunkIdsByFilename()));
+		}
+	}
+
+	private SnapshotVectorStore open(Path file) throws Exception {
+		return new SnapshotVectorStore(embeddingModel, new ObjectMapper(), file);
+	}
+
+	private static String nearest(SnapshotVectorStore store, String text) {
+		return store.similaritySearch(SearchRequest.builder().query(text).topK(1).build()).get(0).getId();
+	}
+
+	private static Map<String, Integer> sizes(Map<String, List<String>> idsByFilename) {
+		return idsByFilename.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size()));
+	}
+}
@@ -0,0 +1,70 @@
+package ai.com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VectorSnapshotTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void float32SnapshotRoundTrips() throws Exception {
+		Path file = tempDir.resolve("store.snap");
+		float[] first = HnswVectorStore.normalize(new float[] {1, 2, 3, 4});
+		float[] second = HnswVectorStore.normalize(new float[] {-4, 3, -2, 1});
+		try (VectorSnapshot.Writer writer = new VectorSnapshot.Writer(file, VectorSnapshot.Encoding.FLOAT32)) {
+			writer.add(new VectorSnapshot.Chunk("a", "Relay final", Map.of("filename", "athletics.pdf", "page", 3L, "official", true)), first);
+			writer.add(new VectorSnapshot.Chunk("b", "Swimming heats", Map.of("filename", "swimming.pdf", "score", 0.5)), second);
+			writer.finish();
+		}
+
+		try (VectorSnapshot snapshot = VectorSnapshot.open(file)) {
+			assertEquals(2, snapshot.size());
+			assertEquals(4, snapshot.dimensions());
+			assertArrayEquals(second, snapshot.vector(1));
+			assertEquals(1f, snapshot.dot(0, first), 1e-6);
+
+			VectorSnapshot.Chunk chunk = snapshot.chunk(0);
+			assertEquals("a", chunk.id());
+			assertEquals("Relay final", chunk.text());
+			assertEquals(Map.of("filename", "athletics.pdf", "page", 3L, "official", true), chunk.metadata());
+			assertEquals(Map.of("filename", "swimming.pdf", "score", 0.5), snapshot.metadata(1));
+		}
+	}
+
+	@Test
+	void emptySnapshotOpens() throws Exception {
+		Path file = tempDir.resolve("store.snap");
+		try (VectorSnapshot.Writer writer = new VectorSnapshot.Writer(file, VectorSnapshot.Encoding.FLOAT32)) {
+			writer.finish();
+		}
+
+		try (VectorSnapshot snapshot = VectorSnapshot.open(file)) {
+			assertEquals(0, snapshot.size());
+			assertEquals(0, snapshot.dimensions());
+		}
+	}
+
+	@Test
+	void int8SnapshotKeepsSimilaritiesClose() throws Exception {
+		Path file = tempDir.resolve("store.snap");
+		float[] vector = HnswVectorStore.normalize(new float[] {0.3f, -1.2f, 2.5f, 0.01f, -0.7f});
+		try (VectorSnapshot.Writer writer = new VectorSnapshot.Writer(file, VectorSnapshot.Encoding.INT8)) {
+			writer.add(new VectorSnapshot.Chunk("a", "text", Map.of()), vector);
+			writer.finish();
+		}
+
+		try (VectorSnapshot snapshot = VectorSnapshot.open(file)) {
+			assertEquals(VectorSnapshot.Encoding.INT8, snapshot.encoding());
+			assertEquals(1f, snapshot.dot(0, vector), 0.01);
+			assertArrayEquals(vector, snapshot.vector(0), 0.01f);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package ai.com.example;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeatherServiceTests {
+
+	// Local stand-in for weatherapi.com: slow enough that concurrent lookups overlap
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+	private volatile int status = 200;
+	private HttpServer server;
+
+	@BeforeEach
+	void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/current.json", exchange -> {
+			upstreamCalls.incrementAndGet();
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = ("{\"q\":\"" + exchange.getRequestURI().getQuery() + "\"}").getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(status, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	void concurrentLookupsForOneLocationShareACallAndTheCache() throws Exception {
+		WeatherService weather = service(5);
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		List<Future<WeatherService.WeatherResponse>> responses = new ArrayList<>();
+		for (String location : List.of("London", "london", " LONDON ", "London", "london ", "London", "london", "London")) {
+			responses.add(callers.submit(() -> weather.apply(new WeatherService.WeatherRequest(location))));
+		}
+		for (Future<WeatherService.WeatherResponse> response : responses) {
+			assertEquals("Success", response.get().status());
+		}
+		callers.shutdown();
+
+		assertEquals(1, upstreamCalls.get());
+		assertEquals("Success", weather.apply(new WeatherService.WeatherRequest("LONDON")).status());
+		assertEquals(1, upstreamCalls.get());
+
+		weather.apply(new WeatherService.WeatherRequest("Paris"));
+		assertEquals(2, upstreamCalls.get());
+	}
+
+	@Test
+	void serverErrorsOpenTheCircuitAndAreNotCached() {
+		status = 503;
+		WeatherService weather = service(2);
+		assertEquals("Error", weather.apply(new WeatherService.WeatherRequest("London")).status());
+		assertEquals("Error", weather.apply(new WeatherService.WeatherRequest("London")).status());
+		assertEquals(2, upstreamCalls.get());
+
+		WeatherService.WeatherResponse rejected = weather.apply(new WeatherService.WeatherRequest("Paris"));
+		assertEquals("Error", rejected.status());
+		assertTrue(rejected.data().contains("temporarily unavailable"));
+		assertEquals(2, upstreamCalls.get());
+	}
+
+	@Test
+	void cancelledLookupNeitherTripsTheCircuitNorFailsItsWaiters() throws Exception {
+		WeatherService weather = service(1);
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+		try {
+			Future<WeatherService.WeatherResponse> owner = callers.submit(() -> weather.apply(new WeatherService.WeatherRequest("London")));
+			while (upstreamCalls.get() == 0) {
+				Thread.sleep(5);
+			}
+			Future<WeatherService.WeatherResponse> waiter = callers.submit(() -> weather.apply(new WeatherService.WeatherRequest("London")));
+			Thread.sleep(50);
+			// What ParallelToolCallingManager does to sibling tools when one of them fails
+			owner.cancel(true);
+
+			assertEquals("Success", waiter.get().status());
+		} finally {
+			callers.shutdownNow();
+		}
+		assertEquals("Success", weather.apply(new WeatherService.WeatherRequest("Paris")).status());
+	}
+
+	private WeatherService service(int failureThreshold) {
+		return new WeatherService(new SimpleMeterRegistry(), "http://127.0.0.1:" + server.getAddress().getPort() + "/v1", "test-key",
+				Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofMinutes(10), 100, failureThreshold, Duration.ofMinutes(1));
+	}
+}